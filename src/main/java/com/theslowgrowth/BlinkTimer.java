@@ -1,142 +1,125 @@
 package com.theslowgrowth;
 
-import com.bitwig.extension.controller.api.Transport;
-
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
+/**
+ * Lets LEDs blink in time with the transport. Blink state is kept per cell in primitive arrays
+ * (indexed x * height + y), so adding, replacing and removing a blinking cell is constant time and
+ * doesn't allocate. The timer only walks the cells that are currently blinking.
+ */
 public class BlinkTimer {
-    BlinkTimer(LinnstrumentClipLauncherExtension parent, Transport transport, LEDBuffer buffer)
+    BlinkTimer(LinnstrumentClipLauncherExtension parent, TransportScheduler scheduler, LEDBuffer buffer)
     {
         parent_ = parent;
-        transport_ = transport;
+        scheduler_ = scheduler;
         buffer_ = buffer;
-        tasks_ = new LinkedList<BlinkTask>();
-        internalTimerPosition_ = 0;
-        active_ = true;
+        height_ = buffer.getHeight();
+        int size = buffer.getWidth() * height_;
+        speed_ = new byte[size];
+        baseColor_ = new byte[size];
+        flashColor_ = new byte[size];
+        slot_ = new int[size];
+        occupied_ = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            speed_[i] = NONE;
+            slot_[i] = -1;
+        }
+        count_ = 0;
+        tick_ = scheduler.createBeatTask(() -> timerCallback(), 0.125, MetricsRegistry.TASK_BLINK); // every 32th note
+        active_ = false;
     }
 
-    public void addTask(BlinkTask t) {
-        tasks_.remove(t);
-        tasks_.add(t);
+    /**
+     * lets a cell blink. Replaces the cell's previous blink settings, if there were any.
+     */
+    public void addTask(int x, int y, Color baseColor, Color flashColor, BlinkSpeed speed) {
+        int i = index(x, y);
+        if (i < 0)
+            return;
+        if (slot_[i] < 0)
+        {
+            slot_[i] = count_;
+            occupied_[count_++] = i;
+        }
+        speed_[i] = (byte) speed.ordinal();
+        baseColor_[i] = (byte) baseColor.getValue();
+        flashColor_[i] = (byte) flashColor.getValue();
 
         if (active_)
-            startTimer();
+            scheduler_.start(tick_);
     }
 
-    public void removeTask(BlinkTask t) {
-        tasks_.remove(t);
+    /**
+     * stops a cell from blinking. The LED keeps the colour it had last.
+     */
+    public void removeTask(int x, int y) {
+        int i = index(x, y);
+        if ((i < 0) || (slot_[i] < 0))
+            return;
+        // move the last occupied cell into the freed slot
+        int slot = slot_[i];
+        int last = occupied_[--count_];
+        occupied_[slot] = last;
+        slot_[last] = slot;
+        slot_[i] = -1;
+        speed_[i] = NONE;
+    }
+
+    public boolean isBlinking(int x, int y) {
+        int i = index(x, y);
+        return (i >= 0) && (slot_[i] >= 0);
     }
 
     public void setActive(boolean shouldBeActive) {
         active_ = shouldBeActive;
-        if (shouldBeActive)
-            startTimer();
+        if (shouldBeActive && (count_ > 0))
+            scheduler_.start(tick_);
+        else
+            scheduler_.stop(tick_);
     }
 
     public void timerCallback()
     {
-        double currentPosition;
-        if (transport_.isPlaying().get())
-        {
-            currentPosition = transport_.getPosition().get();
-        }
-        else
+        if (count_ == 0)
         {
-            internalTimerPosition_ += 0.125; // increment by a 32th note
-            internalTimerPosition_ -= Math.floor(internalTimerPosition_);
-            currentPosition = internalTimerPosition_;
-        }
-
-        if (tasks_.isEmpty())
+            scheduler_.stop(tick_);
             return;
+        }
 
-        // queue the next timer cycle
-        if (active_)
-            startTimer();
-
-        Iterator<BlinkTask> it = tasks_.iterator();
-        while (it.hasNext()) {
-            BlinkTask t = it.next();
-            boolean isOn = false;
-            switch (t.speed_) {
-                case FULL:
-                    isOn = (currentPosition % 4.0) < 2.0;
-                    break;
-                case HALF:
-                    isOn = (currentPosition % 2.0) < 1.0;
-                    break;
-                case QUARTER:
-                    isOn = (currentPosition % 1.0) < 0.5;
-                    break;
-                case _8TH:
-                    isOn = (currentPosition % 0.5) < 0.25;
-                    break;
-                case _16TH:
-                    isOn = (currentPosition % 0.25) < 0.125;
-                    break;
-            }
-            buffer_.set(t.x_, t.y_, isOn?t.flashColor_:t.baseColor_);
+        double currentPosition = scheduler_.getPosition();
+        for (int k = 0; k < count_; k++)
+        {
+            int i = occupied_[k];
+            double period = PERIODS[speed_[i]];
+            boolean isOn = (currentPosition % period) < (period * 0.5);
+            buffer_.set(i / height_, i % height_, Color.fromValue(isOn ? flashColor_[i] : baseColor_[i]));
         }
         parent_.getHost().requestFlush();
     }
 
-    public void startTimer()
+    private int index(int x, int y)
     {
-        double bpm = transport_.tempo().value().get() * 646 + 20; // bitwig tempo goes from 20bpm to 666 bpm
-        double currentPosition;
-        if (transport_.isPlaying().get())
-        {
-            currentPosition = transport_.getPosition().get();
-        }
-        else
-        {
-            currentPosition = internalTimerPosition_;
-        }
-
-        double beatsUntilNextTick;
-        beatsUntilNextTick = 1.0 - (8 * currentPosition - Math.floor(8 * currentPosition));
-        beatsUntilNextTick /= 8.0;
-        double timeInMillis = beatsUntilNextTick / bpm * 60 * 1000;
-        parent_.getHost().scheduleTask(() -> timerCallback(), (long) timeInMillis);
+        if ((x < 0) || (y < 0) || (y >= height_) || (x * height_ + y >= speed_.length))
+            return -1;
+        return x * height_ + y;
     }
 
+    /** the order matches PERIODS */
     enum BlinkSpeed { FULL, HALF, QUARTER, _8TH, _16TH }
 
-    static public class BlinkTask {
-        BlinkTask(int x, int y, Color baseColor, Color flashColor, BlinkSpeed speed)
-        {
-            x_ = x;
-            y_ = y;
-            baseColor_ = baseColor;
-            flashColor_ = flashColor;
-            speed_ = speed;
-        }
-
-        public boolean equals(Object o) {
-            if (!(o instanceof BlinkTask)) {
-                return false;
-            }
-            BlinkTask t = (BlinkTask) o;
-            return (x_ == t.x_) && (y_ == t.y_);
-        }
-
-        final int x_;
-        final int y_;
-        final Color baseColor_;
-        final Color flashColor_;
-        final BlinkTimer.BlinkSpeed speed_;
-    }
+    /** length of one on/off cycle in beats, indexed by BlinkSpeed.ordinal() */
+    private static final double[] PERIODS = { 4.0, 2.0, 1.0, 0.5, 0.25 };
+    private static final byte NONE = -1;
 
     private LinnstrumentClipLauncherExtension parent_;
-    private Transport transport_;
+    private TransportScheduler scheduler_;
+    private TransportScheduler.Task tick_;
     private LEDBuffer buffer_;
-    private List<BlinkTask> tasks_;
+    private final int height_;
+    private final byte[] speed_;      // BlinkSpeed ordinal, NONE if the cell doesn't blink
+    private final byte[] baseColor_;  // colour codes
+    private final byte[] flashColor_;
+    private final int[] slot_;        // position of the cell in occupied_, -1 if not blinking
+    private final int[] occupied_;    // indices of all blinking cells, densely packed
+    private int count_;
     private boolean active_;
-    private double internalTimerPosition_;
-
-    public List<BlinkTask> getTasks() {
-        return tasks_;
-    }
 }
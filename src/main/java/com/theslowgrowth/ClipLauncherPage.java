@@ -6,12 +6,21 @@ import com.bitwig.extension.callback.IndexedColorValueChangedCallback;
 import com.bitwig.extension.callback.IntegerValueChangedCallback;
 import com.bitwig.extension.controller.api.*;
 
+import java.util.Arrays;
+
 public class ClipLauncherPage extends LinnstrumentPage {
-    ClipLauncherPage(int width, int height, LinnstrumentClipLauncherExtension parent, boolean stopRecOnShowPage, String initialLowRowMode)
+    /**
+     * @param windowFactor the page observes windowFactor times the visible tracks and scenes, so scrolling
+     *                     within that window is shown at once from the cache
+     * @param overviewBlockSize edge length in slots of the blocks of the overview mode, 0 to go without it
+     */
+    ClipLauncherPage(int width, int height, LinnstrumentClipLauncherExtension parent, boolean stopRecOnShowPage, String initialLowRowMode,
+                     int windowFactor, int overviewBlockSize)
     {
         super(width, height, parent);
+        metrics_ = parent.getMetrics();
 
-        timer_ = new BlinkTimer(parent, parent.getTransport(), getBuffer());
+        timer_ = new BlinkTimer(parent, parent.getScheduler(), getBuffer());
 
         numTracksVisible_ = width - 1 /* navigation column */- 1 /* scene column */ - 2 /* navigation columns */;
         numScenesVisible_ = height - 1 /* stop row */;
@@ -20,40 +29,69 @@ public class ClipLauncherPage extends LinnstrumentPage {
         scrollColRightX_ = width - 1;
 
         currentCursorTrackLEDIndex_ = -1;
+        progressTask_ = parent.getScheduler().createBeatTask(() -> updateProgress(), PROGRESSTICKBEATS, MetricsRegistry.TASK_CLIPS);
 
         switchMode(Mode.LAUNCH);
 
         finishRecOnShowPage_ = stopRecOnShowPage;
-        currentlyRecording_ = false;
-        recordBank_ = parent.getHost().createMainTrackBank(1, 0, 1);
-        recordBank_.scrollPosition().markInterested();
-        recordBank_.sceneBank().scrollPosition().markInterested();
+        recordings_ = new RecordingTracker(parent.getHost(), RECORDINGBANKS);
+        metrics_.trackValue(MetricsRegistry.RECORDINGS, () -> recordings_.getActiveCount());
 
-        clipStates_ = new ClipState[numTracksVisible_][numScenesVisible_];
-        hasContent_ = new boolean[numTracksVisible_][numScenesVisible_];
-        clipColors_ = new Color[numTracksVisible_][numScenesVisible_];
+        // the observed window, the visible grid is a view into it
+        bankTracks_ = numTracksVisible_ * windowFactor;
+        bankScenes_ = numScenesVisible_ * windowFactor;
+        slots_ = new ClipSlotStore(bankTracks_, bankScenes_);
+        shownColors_ = new Color[numTracksVisible_][numScenesVisible_];
+        dirtySlots_ = new long[(numTracksVisible_ * numScenesVisible_ + 63) >>> 6];
+        pendingTracks_ = new int[numTracksVisible_ * numScenesVisible_];
+        pendingScenes_ = new int[numTracksVisible_ * numScenesVisible_];
+        heldTracks_ = new int[numTracksVisible_ * numScenesVisible_];
+        heldScenes_ = new int[numTracksVisible_ * numScenesVisible_];
+        returnScenes_ = new int[numTracksVisible_ * numScenesVisible_];
+        Arrays.fill(heldTracks_, -1);
+        for (int t = 0; t < numTracksVisible_; t++)
+        {
+            for (int s = 0; s < numScenesVisible_; s++)
+                shownColors_[t][s] = Color.OFF;
+        }
 
         cursorTrack_ = parent.getHost().createCursorTrack(0,0);
         cursorTrack_.position().markInterested();
-        trackBank_ = parent.getHost().createMainTrackBank(numTracksVisible_, 0, numScenesVisible_);
+        trackBank_ = parent.getHost().createMainTrackBank(bankTracks_, 0, bankScenes_);
         trackBank_.followCursorTrack (cursorTrack_);
         trackBank_.scrollPosition().markInterested(); // TODO: required? We'll have an observer running (see below)
         trackBank_.cursorIndex().markInterested();
         trackBank_.channelCount().markInterested();
         trackBank_.sceneBank().scrollPosition().markInterested();
-        for(int t = 0; t < numTracksVisible_; t++)
+        trackBank_.sceneBank().itemCount().markInterested();
+        for(int t = 0; t < bankTracks_; t++)
         {
             ClipLauncherSlotBank clipLauncher = trackBank_.getItemAt(t).clipLauncherSlotBank();
             clipLauncher.addHasContentObserver(new HasContentObserver(t));
             clipLauncher.addPlaybackStateObserver(new PlaybackStateObserver(t));
             clipLauncher.addColorObserver(new ColorObserver(t));
-            for (int s = 0; s < numScenesVisible_; s++)
-            {
-                clipStates_[t][s] = new ClipState();
-                hasContent_[t][s] = false;
-                clipColors_[t][s] = Color.OFF;
-            }
         }
+        parent.getHost().println(String.format("Clip window: observing %d x %d slots for a %d x %d grid, %d slot observers, %d bytes of slot cache",
+                bankTracks_, bankScenes_, numTracksVisible_, numScenesVisible_, 3 * bankTracks_, slots_.getBytes()));
+        if (overviewBlockSize > 0)
+            overview_ = new ClipOverview(parent.getHost(), numTracksVisible_, numScenesVisible_, overviewBlockSize);
+        setLED(0, OVERVIEWBTTNY, (overview_ != null) ? Color.BLUE : Color.OFF);
+
+        // the observers only store the level, the meters are drawn by meterTask_
+        vuLevels_ = new int[bankTracks_];
+        for (int t = 0; t < bankTracks_; t++)
+        {
+            trackBank_.getItemAt(t).addVuMeterObserver(VURANGE, -1, true, new VuMeterObserver(t));
+            trackBank_.getItemAt(t).isStopped().markInterested(); // tells "nothing playing" from "playing elsewhere"
+        }
+        meterPeaks_ = new double[numTracksVisible_];
+        peakHoldMillis_ = new int[numTracksVisible_];
+        shownMeters_ = new int[numTracksVisible_];
+        setMeterFrameRate(DEFMETERFPS);
+        setLED(0, METERBTTNY, Color.BLUE);
+
+        routes_ = new InputRouter(width, height, ROUTES);
+        bindRoutes();
 
         setLED(SCROLLCOLLEFTX, SCROLLUPBTTNY, Color.GREEN);
         setLED(SCROLLCOLLEFTX, SCROLLUPPAGEBTTNY, Color.GREEN);
@@ -77,11 +115,15 @@ public class ClipLauncherPage extends LinnstrumentPage {
 
         if (initialLowRowMode.equals("Select Track"))
             switchLowRowMode(LowRowMode.SELECT);
+        else if (initialLowRowMode.equals("Launch Progress"))
+            switchLowRowMode(LowRowMode.PROGRESS);
         else
             switchLowRowMode(LowRowMode.STOP);
 
         trackBank_.cursorIndex().addValueObserver(new CursorTrackObserver(), -1);
         trackBank_.scrollPosition().addValueObserver(new TrackBankScrollPositionObserver());
+        trackBank_.sceneBank().scrollPosition().addValueObserver(new SceneBankScrollPositionObserver());
+        cursorTrack_.position().addValueObserver(new CursorTrackPositionObserver());
     }
 
     @Override
@@ -89,242 +131,320 @@ public class ClipLauncherPage extends LinnstrumentPage {
         // Update indications in the app
         getParent().getHost().showPopupNotification("LinnStrument Clip Launcher");
 
-        for(int p=0; p<numTracksVisible_; p++)
+        for(int p=0; p<bankTracks_; p++)
         {
             Track track = trackBank_.getItemAt(p);
             track.clipLauncherSlotBank().setIndication(true);
         }
         timer_.setActive(true);
+        visible_ = true;
+        if (meterMode_)
+            getParent().getScheduler().start(meterTask_);
+        if (lowRowMode_ == LowRowMode.PROGRESS)
+            getParent().getScheduler().start(progressTask_);
         switchMode(Mode.LAUNCH);
 
         // finish recording when this setting is enabled
-        if ((finishRecOnShowPage_) && (currentlyRecording_))
-        {
-            // finish the recording
-            recordBank_.getItemAt(0).clipLauncherSlotBank().launch(0);
-            currentlyRecording_ = false;
-        }
+        if (finishRecOnShowPage_)
+            recordings_.finishAll();
     }
 
     @Override
     protected void hideImpl() {
         // Update indications in the app
-        for(int p=0; p<numTracksVisible_; p++)
+        for(int p=0; p<bankTracks_; p++)
         {
             Track track = trackBank_.getItemAt(p);
             track.clipLauncherSlotBank().setIndication(false);
         }
         timer_.setActive(false);
+        visible_ = false;
+        getParent().getScheduler().stop(progressTask_);
+        getParent().getScheduler().stop(meterTask_);
     }
 
     @Override
     public void buttonDown(int x, int y, int velocity) {
-        if (x == 0 && y == 4) {
-            getParent().changePage(getParent().getQwertyPage());
-            return; // consume the press so it doesn't also trigger stop/record/etc.
+        routes_.press(routeMode_, x, y, velocity);
+    }
+
+    @Override
+    public void buttonUp(int x, int y) {
+        routes_.release(routeMode_, x, y);
+    }
+
+    /**
+     * declares the regions of the surface and what a press does there in the normal, overview and meter routes.
+     * (0,4) and (0,5) are bound by the extension for all pages.
+     */
+    private void bindRoutes()
+    {
+        int width = routes_.getWidth();
+        int height = routes_.getHeight();
+        for (int mode : new int[] { ROUTE_CLIPS, ROUTE_METERS })
+        {
+            routes_.bind(mode, 0, RECORDBTTNY, 1, 1, (x, y, v) -> switchMode((mode_ == Mode.RECORD) ? Mode.LAUNCH : Mode.RECORD));
+            routes_.bind(mode, 0, DELETEBTTNY, 1, 1, (x, y, v) -> switchMode((mode_ == Mode.DELETE) ? Mode.LAUNCH : Mode.DELETE));
+            routes_.bind(mode, 0, COPYBTTNY, 1, 1, (x, y, v) -> switchMode(modeIsCopyMode(mode_) ? Mode.LAUNCH : Mode.COPYSELSOURCE));
+            routes_.bind(mode, 0, LOWROWMODEBTTNY, 1, 1, (x, y, v) -> nextLowRowMode());
+            routes_.bind(mode, 0, OVERVIEWBTTNY, 1, 1, (overview_ != null) ? (x, y, v) -> setOverviewMode(true) : null);
+            routes_.bind(mode, 0, METERBTTNY, 1, 1, (x, y, v) -> setMeterMode(!meterMode_));
+            routes_.bind(mode, SCROLLCOLLEFTX, 0, 1, height, (x, y, v) -> scrollButtonDown(x, y));
+            routes_.bind(mode, scrollColRightX_, 0, 1, height, (x, y, v) -> scrollButtonDown(x, y));
+            routes_.bind(mode, sceneLaunchX_, 0, 1, numScenesVisible_, (x, y, v) -> sceneButtonDown(y));
+            routes_.bind(mode, sceneLaunchX_, lowRowY_, 1, 1, (x, y, v) -> stopAllButtonDown());
+            routes_.bind(mode, CLIPSSTARTX, lowRowY_, numTracksVisible_, 1, (x, y, v) -> lowRowButtonDown(x));
         }
-        if (x == 0 && y == 5) {
-            //getParent().changePage(null);
+        routes_.bind(ROUTE_CLIPS, CLIPSSTARTX, 0, numTracksVisible_, numScenesVisible_, new ClipButtonHandler());
+        // the meters cover the clips, presses there are ignored
+
+        // overview: only the overview button, the scroll buttons and the blocks
+        routes_.bind(ROUTE_OVERVIEW, 0, 0, width, height, null);
+        routes_.bind(ROUTE_OVERVIEW, 0, OVERVIEWBTTNY, 1, 1, (x, y, v) -> setOverviewMode(false));
+        routes_.bind(ROUTE_OVERVIEW, SCROLLCOLLEFTX, 0, 1, height, (x, y, v) -> overviewScrollButtonDown(x, y));
+        routes_.bind(ROUTE_OVERVIEW, scrollColRightX_, 0, 1, height, (x, y, v) -> overviewScrollButtonDown(x, y));
+        routes_.bind(ROUTE_OVERVIEW, CLIPSSTARTX, 0, numTracksVisible_, numScenesVisible_, (x, y, v) -> blockButtonDown(x, y));
+    }
+
+    private void updateRouteMode()
+    {
+        routeMode_ = overviewMode_ ? ROUTE_OVERVIEW : (meterMode_ ? ROUTE_METERS : ROUTE_CLIPS);
+    }
+
+    private void nextLowRowMode()
+    {
+        if (lowRowMode_ == LowRowMode.STOP)
+            switchLowRowMode(LowRowMode.SELECT);
+        else if (lowRowMode_ == LowRowMode.SELECT)
+            switchLowRowMode(LowRowMode.PROGRESS);
+        else
+            switchLowRowMode(LowRowMode.STOP);
+    }
+
+    private void scrollButtonDown(int x, int y)
+    {
+        if (y == SCROLLUPBTTNY)
+            scrollView(0, -1);
+        else if (y == SCROLLUPPAGEBTTNY)
+            scrollView(0, -numScenesVisible_);
+        else if (y == SCROLLDOWNBTTNY)
+            scrollView(0, 1);
+        else if (y == SCROLLDOWNPAGEBTTNY)
+            scrollView(0, numScenesVisible_);
+        else if (y == SCROLLHORBTTNY)
+        {
+            if (x == scrollColRightX_)
+                scrollView(1, 0);
+            else
+                scrollView(-1, 0);
         }
-        // a cell on the menu column has been pressed
-        if (x == 0)
+        else if (y == SCROLLHORPAGEBTTNY)
         {
-            if (y == RECORDBTTNY)
-            {
-                if (mode_ == Mode.RECORD)
-                    switchMode(Mode.LAUNCH);
-                else
-                    switchMode(Mode.RECORD);
-            }
-            else if (y == DELETEBTTNY)
-            {
-                if (mode_ == Mode.DELETE)
-                    switchMode(Mode.LAUNCH);
-                else
-                    switchMode(Mode.DELETE);
-            }
-            else if (y == COPYBTTNY)
-            {
-                if (modeIsCopyMode(mode_))
-                    switchMode(Mode.LAUNCH);
-                else
-                    switchMode(Mode.COPYSELSOURCE);
-            }
-            else if (y == LOWROWMODEBTTNY)
-            {
-                if (lowRowMode_ == LowRowMode.STOP)
-                    switchLowRowMode(LowRowMode.SELECT);
-                else
-                    switchLowRowMode(LowRowMode.STOP);
-            }
+            if (x == scrollColRightX_)
+                scrollView(numTracksVisible_, 0);
+            else
+                scrollView(-numTracksVisible_, 0);
         }
-        // a cell in the scroll columns has been pressed
-        else if ((x == SCROLLCOLLEFTX) || (x == scrollColRightX_))
-        {
-            if (y == SCROLLUPBTTNY)
-                trackBank_.sceneBank().scrollBackwards();
-            else if (y == SCROLLUPPAGEBTTNY)
-                trackBank_.sceneBank().scrollPageBackwards();
-            else if (y == SCROLLDOWNBTTNY)
-                trackBank_.sceneBank().scrollForwards();
-            else if (y == SCROLLDOWNPAGEBTTNY)
-                trackBank_.sceneBank().scrollPageForwards();
-            else if (y == SCROLLHORBTTNY)
-            {
-                if (x == scrollColRightX_)
-                    trackBank_.scrollForwards();
-                else
-                    trackBank_.scrollBackwards();
-            }
-            else if (y == SCROLLHORPAGEBTTNY)
-            {
-                if (x == scrollColRightX_)
-                    trackBank_.scrollPageForwards();
-                else
-                    trackBank_.scrollPageBackwards();
-            }
+    }
+
+    /** the button below the scenes stops all clips, or creates a scene from the playing clips in copy mode */
+    private void stopAllButtonDown()
+    {
+        if (mode_ == Mode.COPYSELSOURCE)
+        {
+            getParent().getApplication().getAction("Create Scene From Playing Launcher Clips").invoke();
+            switchMode(Mode.LAUNCH);
         }
-        // a cell in the scene launcher column has been pressed
-        else if (x == sceneLaunchX_)
+        else
         {
-            if (y == lowRowY_)
+            for (int t = 0; t < numTracksVisible_; t++)
             {
-                if (mode_ == Mode.COPYSELSOURCE)
-                {
-                    getParent().getApplication().getAction("Create Scene From Playing Launcher Clips").invoke();
-                    switchMode(Mode.LAUNCH);
-                }
-                else
-                {
-                    for (int t = 0; t < numTracksVisible_; t++)
-                        trackBank_.getItemAt(t).clipLauncherSlotBank().stop();
-                }
+                if (bankTrackOf(t) >= 0)
+                    trackBank_.getItemAt(bankTrackOf(t)).clipLauncherSlotBank().stop();
             }
+        }
+    }
+
+    private void sceneButtonDown(int y)
+    {
+        int scene = bankSceneOf(y);
+        if (scene < 0)
+            return; // not observed yet, the window is still moving there
+        if (mode_ == Mode.DELETE)
+        {
+            // TODO: check if this deletes the scene
+            trackBank_.sceneBank().getItemAt(scene).selectInEditor();
+            getParent().getApplication().remove();
+        }
+        else if (mode_ == Mode.COPYSELSOURCE)
+        {
+            copyBufferScene_ = trackBank_.sceneBank().getItemAt(scene);
+            switchMode(Mode.COPYSELDESTSCENE);
+        }
+        else if ((mode_ == Mode.COPYSELDESTSCENE) && (copyBufferScene_ != null))
+        {
+            Scene s = trackBank_.sceneBank().getItemAt(scene);
+            if (s != copyBufferScene_)
+                s.copyFrom(copyBufferScene_);
             else
             {
-                if (mode_ == Mode.DELETE)
-                {
-                    // TODO: check if this deletes the scene
-                    trackBank_.sceneBank().getItemAt(y).selectInEditor();
-                    getParent().getApplication().remove();
-                }
-                else if (mode_ == Mode.COPYSELSOURCE)
-                {
-                    copyBufferScene_ = trackBank_.sceneBank().getItemAt(y);
-                    switchMode(Mode.COPYSELDESTSCENE);
-                }
-                else if ((mode_ == Mode.COPYSELDESTSCENE) && (copyBufferScene_ != null))
-                {
-                    Scene s = trackBank_.sceneBank().getItemAt(y);
-                    if (s != copyBufferScene_)
-                        s.copyFrom(copyBufferScene_);
-                    else
-                    {
-                        // TODO: check if this duplicates the scene - no it doesn't
-                        trackBank_.sceneBank().getItemAt(y).selectInEditor();
-                        //getParent().getApplication().duplicate();
-                        getParent().getApplication().getAction("Duplicate Special").invoke();
-                    }
-
-                    switchMode(Mode.LAUNCH);
-                }
-                else
-                    trackBank_.sceneBank().launchScene(y);
+                // TODO: check if this duplicates the scene - no it doesn't
+                trackBank_.sceneBank().getItemAt(scene).selectInEditor();
+                //getParent().getApplication().duplicate();
+                getParent().getApplication().getAction("Duplicate Special").invoke();
             }
 
+            switchMode(Mode.LAUNCH);
         }
-        // a cell in the low row has been pressed (stop clips)
-        else if (y == lowRowY_)
+        else
+            trackBank_.sceneBank().launchScene(scene);
+    }
+
+    /** a cell in the low row has been pressed (stop clips) */
+    private void lowRowButtonDown(int x)
+    {
+        int track = bankTrackOf(x - CLIPSSTARTX);
+        if (track < 0)
+            return; // not observed yet, the window is still moving there
+        if ((lowRowMode_ == LowRowMode.STOP) || (lowRowMode_ == LowRowMode.PROGRESS))
         {
-            int cellX = x - CLIPSSTARTX;
-            if (lowRowMode_ == LowRowMode.STOP)
-            {
-                trackBank_.getItemAt(cellX).clipLauncherSlotBank().stop();
-            }
-            else if (lowRowMode_ == LowRowMode.SELECT)
-            {
-                trackBank_.getItemAt(cellX).selectInEditor();
-            }
+            trackBank_.getItemAt(track).clipLauncherSlotBank().stop();
         }
-        // a clip cell has been pressed
-        else if ((x >= CLIPSSTARTX) && (x < CLIPSSTARTX + numTracksVisible_))
+        else if (lowRowMode_ == LowRowMode.SELECT)
+        {
+            trackBank_.getItemAt(track).selectInEditor();
+        }
+    }
+
+    private class ClipButtonHandler implements InputRouter.Handler
+    {
+        @Override
+        public void pressed(int x, int y, int velocity)
         {
             int cellX = x - CLIPSSTARTX;
-            Track track = trackBank_.getItemAt(cellX);
+            int bankTrack = bankTrackOf(cellX);
+            int scene = bankSceneOf(y);
+            if ((bankTrack < 0) || (scene < 0))
+                return; // not observed yet, the window is still moving there
+            Track track = trackBank_.getItemAt(bankTrack);
+            int slot = slots_.index(bankTrack, scene);
 
             // duplicate mode //////////////////
             if (mode_ == Mode.COPYSELSOURCE) {
-                copyBufferClip_ = track.clipLauncherSlotBank().getItemAt(y);
+                copyBufferClip_ = track.clipLauncherSlotBank().getItemAt(scene);
                 switchMode(Mode.COPYSELDESTCLIP);
             }
             else if ((mode_ == Mode.COPYSELDESTCLIP) && (copyBufferClip_ != null)) {
-                ClipLauncherSlot c = track.clipLauncherSlotBank().getItemAt(y);
+                ClipLauncherSlot c = track.clipLauncherSlotBank().getItemAt(scene);
                 c.copyFrom(copyBufferClip_);
                 switchMode(Mode.LAUNCH);
             }
             // record mode //////////////////
             else if (mode_ == Mode.RECORD)
             {
-                ClipState state = clipStates_[cellX][y];
+                int currentState = slots_.getCurrentState(slot);
                 // recording is queued, but its still playing or stopped right now
-                if ((state.queuedState == ClipState.State.RECORDING)
-                        && (state.currentState != ClipState.State.RECORDING))
+                if ((slots_.getQueuedState(slot) == ClipSlotStore.RECORDING) && (currentState != ClipSlotStore.RECORDING))
                 {
                     // revert back to previous state if recording was queued
-                    switch (state.currentState)
-                    {
-                        case STOPPED:
-                        case RECORDING:
-                            track.clipLauncherSlotBank().stop();
-                            break;
-                        case PLAYING:
-                            track.clipLauncherSlotBank().launch(y);
-                            currentlyRecording_ = false;
-                            break;
-                    }
+                    if (currentState == ClipSlotStore.PLAYING)
+                        track.clipLauncherSlotBank().launch(scene);
+                    else
+                        track.clipLauncherSlotBank().stop();
+                    recordings_.finished(viewTrack_ + cellX, viewScene_ + y);
                 }
                 // already recording actively
-                else if (state.currentState == ClipState.State.RECORDING)
+                else if (currentState == ClipSlotStore.RECORDING)
                 {
                     // launch if recording is done
-                    track.clipLauncherSlotBank().launch(y);
-                    currentlyRecording_ = false;
+                    track.clipLauncherSlotBank().launch(scene);
+                    recordings_.finished(viewTrack_ + cellX, viewScene_ + y);
                 }
                 // now yet recording
                 else
                 {
                     // start recording
-                    track.clipLauncherSlotBank().record(y);
-                    // scroll the bank around, so it points to the right cell (so that we can later stop the recording,
-                    // even if the main bank scrolled around in the meantime)
-                    int t = recordBank_.scrollPosition().get();
-                    int targetT = trackBank_.scrollPosition().get() + cellX;
-                    int deltaT = targetT - t;
-                    recordBank_.scrollBy(deltaT);
-                    int s = recordBank_.sceneBank().scrollPosition().get();
-                    int targetS = trackBank_.sceneBank().scrollPosition().get() + y;
-                    int deltaS = targetS - s;
-                    recordBank_.sceneBank().scrollBy(deltaS);
-                    currentlyRecording_ = true;
+                    track.clipLauncherSlotBank().record(scene);
+                    // remember the cell, so that we can later stop the recording, even if the grid scrolled around in the meantime
+                    recordings_.started(viewTrack_ + cellX, viewScene_ + y);
                 }
             }
             // delete mode /////////////////
             else if (mode_ == Mode.DELETE)
             {
                 // TODO: long-press?
-                track.clipLauncherSlotBank().deleteClip(y);
+                track.clipLauncherSlotBank().deleteClip(scene);
             }
             // launch mode /////////////////
             else
             {
-                track.clipLauncherSlotBank().launch(y);
+                int cell = cellX * numScenesVisible_ + y;
+                if (releaseBehaviour_ != ReleaseBehaviour.NONE)
+                {
+                    heldTracks_[cell] = viewTrack_ + cellX;
+                    heldScenes_[cell] = viewScene_ + y;
+                    returnScenes_[cell] = playingScene(bankTrack);
+                }
+                queueLaunch(cellX, y);
+            }
+        }
+
+        @Override
+        public void released(int x, int y)
+        {
+            int cell = (x - CLIPSSTARTX) * numScenesVisible_ + y;
+            int held = heldTracks_[cell];
+            heldTracks_[cell] = -1;
+            int track = held - bankTrack_;
+            if ((held < 0) || (track < 0) || (track >= bankTracks_))
+                return; // wasn't a momentary launch, or the track is no longer observed
+            // the launch must have gone out before it can be undone
+            if (pendingCount_ > 0)
+                launchPending();
+
+            ClipLauncherSlotBank clipLauncher = trackBank_.getItemAt(track).clipLauncherSlotBank();
+            int returnScene = returnScenes_[cell] - bankScene_;
+            if (releaseBehaviour_ == ReleaseBehaviour.STOP)
+                clipLauncher.stop();
+            else if (returnScenes_[cell] == heldScenes_[cell])
+                return; // the clip was playing already, it keeps on playing
+            else if (returnScenes_[cell] < 0)
+            {
+                if (returnScenes_[cell] != UNKNOWNSCENE)
+                    clipLauncher.stop(); // nothing played before
+                // else a clip we don't observe played before, leave the track alone
             }
+            else if ((returnScene >= 0) && (returnScene < bankScenes_))
+                clipLauncher.launch(returnScene);
+            // else the previous clip is no longer observed, leave the track alone
         }
     }
 
-    @Override
-    public void buttonUp(int x, int y) {
+    /**
+     * sets how long the page waits for more clip presses before launching. Clips pressed together are
+     * launched in one go, so they all start at the same quantization point.
+     */
+    void setChordWindow(int millis)
+    {
+        chordWindowMillis_ = millis;
+    }
 
+    /**
+     * @param quantization the launch quantization the progress row counts down to, as bitwig names it
+     *                     ("none", "8" bars down to "1/16")
+     */
+    void setLaunchQuantization(String quantization)
+    {
+        launchQuantizationBeats_ = launchQuantizationBeats(quantization);
+    }
+
+    /**
+     * @param behaviour what releasing a clip button does in launch mode
+     */
+    void setReleaseBehaviour(ReleaseBehaviour behaviour)
+    {
+        releaseBehaviour_ = behaviour;
+        Arrays.fill(heldTracks_, -1);
     }
 
     void setFinishRecOnShowPage(boolean shouldStopRecOnShowPage)
@@ -332,11 +452,251 @@ public class ClipLauncherPage extends LinnstrumentPage {
         finishRecOnShowPage_ = shouldStopRecOnShowPage;
     }
 
+    /**
+     * maps all clip colours again, to be called after {@link Color#setMapping(ColorMapping)}
+     */
+    void remapClipColors()
+    {
+        for (int i = 0; i < slots_.size(); i++)
+            slots_.mapColor(i);
+        markViewDirty();
+        getParent().getHost().requestFlush();
+    }
+
+    /**
+     * @param distinct if true, a clip that would show the same colour as the clip left of it shows its
+     *                 mapping's runner-up colour instead
+     */
+    void setDistinctNeighbourColors(boolean distinct)
+    {
+        distinctNeighbourColors_ = distinct;
+        markViewDirty();
+        getParent().getHost().requestFlush();
+    }
+
+    /**
+     * recomputes the LEDs of all slots whose state changed since the last flush. However many
+     * observer callbacks came in, every slot is evaluated at most once (plus once more if its left
+     * neighbour changed colour with distinct neighbour colours on).
+     */
+    @Override
+    public void prepareFlush()
+    {
+        if (overviewMode_)
+        {
+            // clip slots stay dirty, they are all repainted when the overview is left anyway
+            for (int block = overview_.pollDirtyBlock(); block >= 0; block = overview_.pollDirtyBlock())
+                updateBlockLED(block / numScenesVisible_, block % numScenesVisible_);
+            return;
+        }
+        if (meterMode_)
+        {
+            // the meters are drawn by their own task, clip slots are repainted when the meters are left
+            return;
+        }
+        // slots are numbered track by track, so a right neighbour marked on the way is still visited
+        for (int w = 0; w < dirtySlots_.length; w++)
+        {
+            while (dirtySlots_[w] != 0)
+            {
+                int bit = Long.numberOfTrailingZeros(dirtySlots_[w]);
+                dirtySlots_[w] &= ~(1L << bit);
+                int slot = (w << 6) + bit;
+                updateClipLED(slot / numScenesVisible_, slot % numScenesVisible_);
+            }
+        }
+    }
+
+    /**
+     * collects a clip launch. The first press opens the chord window, all clips pressed until it closes
+     * are launched back to back. The pressed cells flash right away.
+     */
+    private void queueLaunch(int column, int row)
+    {
+        pendingTracks_[pendingCount_] = viewTrack_ + column;
+        pendingScenes_[pendingCount_] = viewScene_ + row;
+        pendingCount_++;
+        setLED(column + CLIPSSTARTX, row, Color.WHITE);
+        timer_.addTask(column + CLIPSSTARTX, row, shownColors_[column][row], Color.WHITE, BlinkTimer.BlinkSpeed._16TH);
+
+        if ((chordWindowMillis_ <= 0) || (pendingCount_ == pendingTracks_.length))
+            launchPending();
+        else if (pendingCount_ == 1)
+        {
+            final int generation = ++chordGeneration_;
+            getParent().scheduleTask(() -> {
+                if (generation == chordGeneration_)
+                    launchPending();
+            }, chordWindowMillis_, MetricsRegistry.SCHEDULE_CLIPS);
+        }
+    }
+
+    private void launchPending()
+    {
+        chordGeneration_++; // a scheduled launch has nothing left to do
+        for (int i = 0; i < pendingCount_; i++)
+        {
+            // positions are absolute, the observed window may have moved while the window was open
+            int track = pendingTracks_[i] - bankTrack_;
+            int scene = pendingScenes_[i] - bankScene_;
+            if ((track >= 0) && (track < bankTracks_) && (scene >= 0) && (scene < bankScenes_))
+            {
+                trackBank_.getItemAt(track).clipLauncherSlotBank().launch(scene);
+                // bitwig reports a queued state for clips only, empty slots must stop flashing by themselves
+                if (!slots_.hasContent(slots_.index(track, scene)))
+                    markBankSlotDirty(track, scene);
+            }
+        }
+        pendingCount_ = 0;
+    }
+
+    /**
+     * @return absolute scene of the clip playing on a track of the observed window, -1 if none is,
+     *         UNKNOWNSCENE if a clip outside the window plays
+     */
+    private int playingScene(int bankTrack)
+    {
+        for (int s = 0; s < bankScenes_; s++)
+        {
+            if (slots_.getCurrentState(slots_.index(bankTrack, s)) == ClipSlotStore.PLAYING)
+                return bankScene_ + s;
+        }
+        return trackBank_.getItemAt(bankTrack).isStopped().get() ? -1 : UNKNOWNSCENE;
+    }
+
+    private void markSlotDirty(int track, int scene)
+    {
+        int slot = track * numScenesVisible_ + scene;
+        dirtySlots_[slot >>> 6] |= 1L << slot;
+    }
+
+    /** marks the visible slot showing a slot of the observed window, if it is visible */
+    private void markBankSlotDirty(int bankTrack, int bankScene)
+    {
+        int track = bankTrack_ + bankTrack - viewTrack_;
+        int scene = bankScene_ + bankScene - viewScene_;
+        if ((track >= 0) && (track < numTracksVisible_) && (scene >= 0) && (scene < numScenesVisible_))
+            markSlotDirty(track, scene);
+    }
+
+    private void markViewDirty()
+    {
+        for (int t = 0; t < numTracksVisible_; t++)
+        {
+            for (int s = 0; s < numScenesVisible_; s++)
+                markSlotDirty(t, s);
+        }
+    }
+
+    /**
+     * @return index in the observed window of a visible track column, -1 if it isn't observed (yet)
+     */
+    private int bankTrackOf(int column)
+    {
+        int t = viewTrack_ - bankTrack_ + column;
+        return ((t >= 0) && (t < bankTracks_)) ? t : -1;
+    }
+
+    /**
+     * @return index in the observed window of a visible scene row, -1 if it isn't observed (yet)
+     */
+    private int bankSceneOf(int row)
+    {
+        int s = viewScene_ - bankScene_ + row;
+        return ((s >= 0) && (s < bankScenes_)) ? s : -1;
+    }
+
+    /**
+     * moves the visible grid by a number of tracks and scenes. The grid is repainted from the cache at once,
+     * the observed window follows later.
+     */
+    private void scrollView(int tracks, int scenes)
+    {
+        moveViewWithinSession(viewTrack_ + tracks, viewScene_ + scenes);
+    }
+
+    /** moves the view as close to a track and scene as the size of the session allows */
+    private void moveViewWithinSession(int track, int scene)
+    {
+        int maxTrack = Math.max(0, trackBank_.channelCount().get() - numTracksVisible_);
+        int maxScene = Math.max(0, trackBank_.sceneBank().itemCount().get() - numScenesVisible_);
+        moveView(Math.max(0, Math.min(maxTrack, track)), Math.max(0, Math.min(maxScene, scene)));
+    }
+
+    private void moveView(int track, int scene)
+    {
+        if ((track == viewTrack_) && (scene == viewScene_))
+            return;
+        viewTrack_ = track;
+        viewScene_ = scene;
+        markViewDirty();
+        if (overviewMode_)
+            overview_.markAllDirty(); // the view's block is highlighted
+        updateCursorTrackLED();
+        scheduleRecenter();
+    }
+
+    /**
+     * re-centres the observed window around the view once it gets close to the window's edge. As long as
+     * the view is still inside the window, this waits for scrolling to settle; bitwig resends every slot
+     * of the window when it moves.
+     */
+    private void scheduleRecenter()
+    {
+        if (!needsRecenter())
+            return;
+        final int generation = ++recenterGeneration_;
+        if (bankTrackOf(0) < 0 || bankTrackOf(numTracksVisible_ - 1) < 0 || bankSceneOf(0) < 0 || bankSceneOf(numScenesVisible_ - 1) < 0)
+            recenter(); // part of the view isn't observed, don't wait
+        else
+            getParent().scheduleTask(() -> {
+                if (generation == recenterGeneration_)
+                    recenter();
+            }, RECENTERDELAYMS, MetricsRegistry.SCHEDULE_CLIPS);
+    }
+
+    private boolean needsRecenter()
+    {
+        int marginTracks = (bankTracks_ - numTracksVisible_) / 4;
+        int marginScenes = (bankScenes_ - numScenesVisible_) / 4;
+        int left = viewTrack_ - bankTrack_;
+        int right = bankTrack_ + bankTracks_ - viewTrack_ - numTracksVisible_;
+        int above = viewScene_ - bankScene_;
+        int below = bankScene_ + bankScenes_ - viewScene_ - numScenesVisible_;
+        return ((recenteredTrack() != bankTrack_) && (Math.min(left, right) < marginTracks))
+            || ((recenteredScene() != bankScene_) && (Math.min(above, below) < marginScenes));
+    }
+
+    private void recenter()
+    {
+        if (!needsRecenter())
+            return;
+        int track = recenteredTrack();
+        int scene = recenteredScene();
+        if (track != bankTrack_)
+            trackBank_.scrollPosition().set(track);
+        if (scene != bankScene_)
+            trackBank_.sceneBank().scrollPosition().set(scene);
+    }
+
+    /** scroll position of the observed window that puts the view in its centre */
+    private int recenteredTrack()
+    {
+        int max = Math.max(0, trackBank_.channelCount().get() - bankTracks_);
+        return Math.max(0, Math.min(max, viewTrack_ - (bankTracks_ - numTracksVisible_) / 2));
+    }
+
+    private int recenteredScene()
+    {
+        int max = Math.max(0, trackBank_.sceneBank().itemCount().get() - bankScenes_);
+        return Math.max(0, Math.min(max, viewScene_ - (bankScenes_ - numScenesVisible_) / 2));
+    }
+
     private void switchMode(Mode m) {
         // in case we switch our of a copy mode, remove the blinking task
         if (modeIsCopyMode(mode_) && !modeIsCopyMode(m))
         {
-            timer_.removeTask(new BlinkTimer.BlinkTask(0, COPYBTTNY, Color.OFF, Color.GREEN, BlinkTimer.BlinkSpeed._16TH));
+            timer_.removeTask(0, COPYBTTNY);
             setLED(0, COPYBTTNY, Color.OFF);
         }
 
@@ -345,60 +705,249 @@ public class ClipLauncherPage extends LinnstrumentPage {
         if (mode_ == Mode.LAUNCH)
         {
             setLED(0, RECORDBTTNY, Color.OFF);
-            timer_.removeTask(new BlinkTimer.BlinkTask(0, DELETEBTTNY, Color.OFF, Color.RED, BlinkTimer.BlinkSpeed._16TH));
+            timer_.removeTask(0, DELETEBTTNY);
             setLED(0, DELETEBTTNY, Color.OFF);
         }
         else if (mode_== Mode.RECORD) {
             setLED(0, RECORDBTTNY, Color.RED);
-            timer_.removeTask(new BlinkTimer.BlinkTask(0, DELETEBTTNY, Color.OFF, Color.RED, BlinkTimer.BlinkSpeed._16TH));
+            timer_.removeTask(0, DELETEBTTNY);
             setLED(0, DELETEBTTNY, Color.OFF);
         }
         else if (mode_== Mode.DELETE) {
             setLED(0, RECORDBTTNY, Color.OFF);
-            timer_.addTask(new BlinkTimer.BlinkTask(0, DELETEBTTNY, Color.OFF, Color.RED, BlinkTimer.BlinkSpeed._16TH));
+            timer_.addTask(0, DELETEBTTNY, Color.OFF, Color.RED, BlinkTimer.BlinkSpeed._16TH);
         }
         else if (mode_ == Mode.COPYSELSOURCE) {
-            timer_.addTask(new BlinkTimer.BlinkTask(0, COPYBTTNY, Color.OFF, Color.GREEN, BlinkTimer.BlinkSpeed._16TH));
+            timer_.addTask(0, COPYBTTNY, Color.OFF, Color.GREEN, BlinkTimer.BlinkSpeed._16TH);
         }
     }
 
+    private void setOverviewMode(boolean overview)
+    {
+        if (overview && meterMode_)
+            setMeterMode(false);
+        overviewMode_ = overview;
+        Arrays.fill(heldTracks_, -1); // their releases go to another route now
+        updateRouteMode();
+        if (overview)
+        {
+            switchMode(Mode.LAUNCH);
+            for (int y = 0; y <= lowRowY_; y++)
+                setLED(sceneLaunchX_, y, Color.OFF);
+            for (int x = CLIPSSTARTX; x < sceneLaunchX_; x++)
+                setLED(x, lowRowY_, Color.OFF);
+            overview_.markAllDirty();
+            setLED(0, OVERVIEWBTTNY, Color.WHITE);
+        }
+        else
+        {
+            for (int y = 0; y < numScenesVisible_; y++)
+                setLED(sceneLaunchX_, y, Color.CYAN);
+            switchLowRowMode(lowRowMode_);
+            markViewDirty();
+            setLED(0, OVERVIEWBTTNY, Color.BLUE);
+        }
+    }
+
+    /**
+     * sets how often the meters are drawn. The levels bitwig reports in between only update the stored level.
+     */
+    void setMeterFrameRate(int framesPerSecond)
+    {
+        if (meterTask_ != null)
+            getParent().getScheduler().stop(meterTask_);
+        meterPeriodMillis_ = Math.max(1, 1000 / Math.max(1, framesPerSecond));
+        meterTask_ = getParent().getScheduler().createMillisTask(() -> updateMeters(), meterPeriodMillis_, MetricsRegistry.TASK_CLIPS);
+        if (meterMode_ && visible_)
+            getParent().getScheduler().start(meterTask_);
+    }
+
+    private void setMeterMode(boolean meters)
+    {
+        meterMode_ = meters;
+        Arrays.fill(heldTracks_, -1); // their releases go to another route now
+        updateRouteMode();
+        if (meters)
+        {
+            for (int t = 0; t < numTracksVisible_; t++)
+            {
+                for (int s = 0; s < numScenesVisible_; s++)
+                    timer_.removeTask(t + CLIPSSTARTX, s);
+                shownMeters_[t] = -1;
+            }
+            if (visible_)
+                getParent().getScheduler().start(meterTask_);
+            updateMeters();
+        }
+        else
+        {
+            getParent().getScheduler().stop(meterTask_);
+            markViewDirty();
+        }
+        setLED(0, METERBTTNY, meters ? Color.WHITE : Color.BLUE);
+    }
+
+    /**
+     * draws one frame of the meters. Each column shows its track's level as a bar from the bottom, with the
+     * highest level of the last PEAKHOLDMS on top, which then falls at PEAKDECAY cells per second.
+     * A column is only drawn when its bar height or peak cell changed.
+     */
+    private void updateMeters()
+    {
+        if (!meterMode_)
+            return;
+        metrics_.increment(MetricsRegistry.METER_FRAMES);
+        boolean changed = false;
+        for (int t = 0; t < numTracksVisible_; t++)
+        {
+            int bankTrack = bankTrackOf(t);
+            int level = (bankTrack >= 0) ? vuLevels_[bankTrack] : 0;
+            int height = Math.min(numScenesVisible_, (level * numScenesVisible_ + (VURANGE - 1) / 2) / (VURANGE - 1));
+            if (height >= meterPeaks_[t])
+            {
+                meterPeaks_[t] = height;
+                peakHoldMillis_[t] = PEAKHOLDMS;
+            }
+            else if (peakHoldMillis_[t] > 0)
+                peakHoldMillis_[t] -= meterPeriodMillis_;
+            else
+                meterPeaks_[t] = Math.max(height, meterPeaks_[t] - PEAKDECAY * meterPeriodMillis_ / 1000.0);
+
+            int peak = (int) Math.ceil(meterPeaks_[t]);
+            int shown = (height << 8) | peak;
+            if (shown == shownMeters_[t])
+                continue;
+            shownMeters_[t] = shown;
+            for (int s = 0; s < numScenesVisible_; s++)
+            {
+                int cell = numScenesVisible_ - s; // 1 at the bottom
+                boolean lit = (cell <= height) || (cell == peak);
+                if (setLED(t + CLIPSSTARTX, s, lit ? meterColor(cell) : Color.OFF))
+                {
+                    metrics_.increment(MetricsRegistry.METER_CHANGES);
+                    changed = true;
+                }
+            }
+        }
+        if (changed)
+            getParent().getHost().requestFlush();
+    }
+
+    private Color meterColor(int cell)
+    {
+        if (cell == numScenesVisible_)
+            return Color.RED;
+        if (cell * 3 > numScenesVisible_ * 2)
+            return Color.YELLOW;
+        return Color.GREEN;
+    }
+
+    /** in overview mode, the scroll buttons move the overview by one block or a whole screen of blocks */
+    private void overviewScrollButtonDown(int x, int y)
+    {
+        int direction = (x == scrollColRightX_) ? 1 : -1;
+        if (y == SCROLLUPBTTNY)
+            overview_.scroll(0, -1);
+        else if (y == SCROLLUPPAGEBTTNY)
+            overview_.scroll(0, -numScenesVisible_);
+        else if (y == SCROLLDOWNBTTNY)
+            overview_.scroll(0, 1);
+        else if (y == SCROLLDOWNPAGEBTTNY)
+            overview_.scroll(0, numScenesVisible_);
+        else if (y == SCROLLHORBTTNY)
+            overview_.scroll(direction, 0);
+        else if (y == SCROLLHORPAGEBTTNY)
+            overview_.scroll(direction * numTracksVisible_, 0);
+    }
+
+    /** pressing a block of the overview moves the clip grid there */
+    private void blockButtonDown(int x, int y)
+    {
+        int size = overview_.getBlockSize();
+        moveViewWithinSession(overview_.getTrackPosition() + (x - CLIPSSTARTX) * size,
+                              overview_.getScenePosition() + y * size);
+        setOverviewMode(false);
+    }
+
+    /**
+     * shows a block of the overview: red if a clip records, green if one plays, blue if there are clips at all.
+     * Blocks with queued clips flash white quickly, the block the clip grid is at flashes white slowly.
+     */
+    private void updateBlockLED(int blockX, int blockY)
+    {
+        int x = blockX + CLIPSSTARTX;
+        int flags = overview_.getFlags(blockX, blockY);
+        Color c;
+        if ((flags & ClipOverview.RECORDING) != 0)
+            c = Color.RED;
+        else if ((flags & ClipOverview.PLAYING) != 0)
+            c = Color.GREEN;
+        else if ((flags & ClipOverview.CONTENT) != 0)
+            c = Color.BLUE;
+        else
+            c = Color.OFF;
+        setLED(x, blockY, c);
+
+        int size = overview_.getBlockSize();
+        boolean isView = (Math.floorDiv(viewTrack_ - overview_.getTrackPosition(), size) == blockX)
+                      && (Math.floorDiv(viewScene_ - overview_.getScenePosition(), size) == blockY);
+        if ((flags & ClipOverview.QUEUED) != 0)
+            timer_.addTask(x, blockY, c, Color.WHITE, BlinkTimer.BlinkSpeed._16TH);
+        else if (isView)
+            timer_.addTask(x, blockY, c, Color.WHITE, BlinkTimer.BlinkSpeed.HALF);
+        else
+            timer_.removeTask(x, blockY);
+    }
+
     private void updateClipLED(int track, int scene)
     {
-        Color c = hasContent_[track][scene]?clipColors_[track][scene]:Color.OFF;
+        int bankTrack = bankTrackOf(track);
+        int bankScene = bankSceneOf(scene);
+        // slots outside the observed window are shown empty until the window got there
+        int slot = ((bankTrack >= 0) && (bankScene >= 0)) ? slots_.index(bankTrack, bankScene) : -1;
+        Color c = ((slot >= 0) && slots_.hasContent(slot)) ? slots_.getColor(slot) : Color.OFF;
+        if (distinctNeighbourColors_ && (track > 0) && (c != Color.OFF) && (shownColors_[track - 1][scene] == c))
+            c = slots_.getAlternativeColor(slot);
+        boolean colorChanged = shownColors_[track][scene] != c;
+        shownColors_[track][scene] = c;
         setLED(track + CLIPSSTARTX, scene, c);
 
 
-        ClipState state = clipStates_[track][scene];
-        if (state.hasChangeQueued())
+        int queuedState = (slot >= 0) ? slots_.getQueuedState(slot) : ClipSlotStore.STOPPED;
+        if ((slot >= 0) && slots_.hasChangeQueued(slot))
         {
-            switch (state.queuedState)
+            switch (queuedState)
             {
-                case STOPPED:
-                    timer_.addTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.OFF, BlinkTimer.BlinkSpeed._16TH));
+                case ClipSlotStore.STOPPED:
+                    timer_.addTask(track + CLIPSSTARTX, scene, c, Color.OFF, BlinkTimer.BlinkSpeed._16TH);
                     break;
-                case PLAYING:
-                    timer_.addTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.WHITE, BlinkTimer.BlinkSpeed._16TH));
+                case ClipSlotStore.PLAYING:
+                    timer_.addTask(track + CLIPSSTARTX, scene, c, Color.WHITE, BlinkTimer.BlinkSpeed._16TH);
                     break;
-                case RECORDING:
-                    timer_.addTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.RED, BlinkTimer.BlinkSpeed._16TH));
+                case ClipSlotStore.RECORDING:
+                    timer_.addTask(track + CLIPSSTARTX, scene, c, Color.RED, BlinkTimer.BlinkSpeed._16TH);
                     break;
             }
         }
         else
         {
-            switch (state.queuedState)
+            switch (queuedState)
             {
-                case STOPPED:
-                    timer_.removeTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.OFF, BlinkTimer.BlinkSpeed._16TH));
+                case ClipSlotStore.STOPPED:
+                    timer_.removeTask(track + CLIPSSTARTX, scene);
                     break;
-                case PLAYING:
-                    timer_.addTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.WHITE, BlinkTimer.BlinkSpeed.QUARTER));
+                case ClipSlotStore.PLAYING:
+                    timer_.addTask(track + CLIPSSTARTX, scene, c, Color.WHITE, BlinkTimer.BlinkSpeed.QUARTER);
                     break;
-                case RECORDING:
-                    timer_.addTask(new BlinkTimer.BlinkTask(track + CLIPSSTARTX, scene, c, Color.RED, BlinkTimer.BlinkSpeed.QUARTER));
+                case ClipSlotStore.RECORDING:
+                    timer_.addTask(track + CLIPSSTARTX, scene, c, Color.RED, BlinkTimer.BlinkSpeed.QUARTER);
                     break;
             }
         }
+
+        // the clip to the right may have to switch between its colours now
+        if (colorChanged && distinctNeighbourColors_ && (track + 1 < numTracksVisible_))
+            markSlotDirty(track + 1, scene);
     }
 
     private void switchLowRowMode(LowRowMode newMode)
@@ -421,15 +970,91 @@ public class ClipLauncherPage extends LinnstrumentPage {
             }
             setLED(sceneLaunchX_, lowRowY_, Color.RED); // stop all will still be available
         }
+        else if (newMode == LowRowMode.PROGRESS)
+        {
+            for (int x = CLIPSSTARTX; x < sceneLaunchX_; x++)
+                setLED(x, lowRowY_, Color.OFF);
+            setLED(sceneLaunchX_, lowRowY_, Color.RED);
+            progressShown_ = -1;
+        }
         lowRowMode_ = newMode;
+        if ((newMode == LowRowMode.PROGRESS) && visible_)
+            getParent().getScheduler().start(progressTask_);
+        else
+            getParent().getScheduler().stop(progressTask_);
+        if (newMode == LowRowMode.PROGRESS)
+            updateProgress();
     }
 
-    private void updateCursorTrackLED(int newCursorTrackIndex)
+    /**
+     * draws the low row in progress mode. While clips are queued, a yellow bar counts down to the next
+     * launch quantization point. Otherwise, while clips play, a green playhead runs through the
+     * quantization period, which is where a clip launched on the grid is in its loop. Only cells whose
+     * colour changes are written.
+     */
+    private void updateProgress()
     {
+        if ((lowRowMode_ != LowRowMode.PROGRESS) || overviewMode_)
+            return;
+        double period = launchQuantizationBeats_;
+        double phase = (period > 0) ? (getParent().getScheduler().getPosition() % period) / period : 0;
+        if (phase < 0)
+            phase += 1;
+        int shown;
+        if ((queuedSlots_ > 0) && (period > 0))
+            shown = PROGRESSBAR | (int) Math.ceil((1 - phase) * numTracksVisible_);
+        else if ((playingSlots_ > 0) && (period > 0))
+            shown = PROGRESSPLAYHEAD | Math.min(numTracksVisible_ - 1, (int) (phase * numTracksVisible_));
+        else
+            shown = 0;
+        if (shown == progressShown_)
+            return;
+        progressShown_ = shown;
+
+        int cells = shown & PROGRESSCELLS;
+        for (int t = 0; t < numTracksVisible_; t++)
+        {
+            Color c = Color.OFF;
+            if ((shown & PROGRESSBAR) != 0)
+                c = (t < cells) ? Color.YELLOW : Color.OFF;
+            else if ((shown & PROGRESSPLAYHEAD) != 0)
+                c = (t == cells) ? Color.GREEN : Color.OFF;
+            setLED(CLIPSSTARTX + t, lowRowY_, c);
+        }
+        getParent().getHost().requestFlush();
+    }
+
+    /**
+     * @return length of a launch quantization in beats (4/4 bars), 0 if clips launch at once
+     */
+    private static double launchQuantizationBeats(String q)
+    {
+        try
+        {
+            int slash = q.indexOf('/');
+            if (slash >= 0)
+                return 4.0 * Integer.parseInt(q.substring(0, slash)) / Integer.parseInt(q.substring(slash + 1));
+            return 4.0 * Integer.parseInt(q);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0; // "none"
+        }
+    }
+
+    private void updateCursorTrackLED()
+    {
+        int newCursorTrackIndex = -1;
+        if (cursorBankIndex_ >= 0)
+        {
+            int t = bankTrack_ + cursorBankIndex_ - viewTrack_;
+            if ((t >= 0) && (t < numTracksVisible_))
+                newCursorTrackIndex = t;
+        }
         int oldCursorTrackIndex = currentCursorTrackLEDIndex_;
         currentCursorTrackLEDIndex_ = newCursorTrackIndex;
 
-        if (lowRowMode_ == LowRowMode.SELECT)
+        if ((lowRowMode_ == LowRowMode.SELECT) && !overviewMode_)
         {
             if (oldCursorTrackIndex >= 0)
             {
@@ -458,8 +1083,9 @@ public class ClipLauncherPage extends LinnstrumentPage {
         }
         public void valueChanged(int scene, boolean hasContent)
         {
-            hasContent_[track_][scene] = hasContent;
-            updateClipLED(track_, scene);
+            slots_.setHasContent(slots_.index(track_, scene), hasContent);
+            metrics_.increment(MetricsRegistry.CLIP_OBSERVERS);
+            markBankSlotDirty(track_, scene);
         }
         private int track_;
     }
@@ -471,39 +1097,19 @@ public class ClipLauncherPage extends LinnstrumentPage {
             track_ = track;
         }
         public void playbackStateChanged(int slotIndex, int playbackState, boolean isQueued) {
-
-            if (isQueued) {
-                switch (playbackState) {
-                    case 0:
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.STOPPED;
-                        break;
-                    case 1:
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.PLAYING;
-                        break;
-                    case 2:
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.RECORDING;
-                        break;
-                }
-            } else {
-                switch (playbackState) {
-                    case 0:
-                        clipStates_[track_][slotIndex].currentState = ClipState.State.STOPPED;
-                        // bitwig doesn't send this
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.STOPPED;
-                        break;
-                    case 1:
-                        clipStates_[track_][slotIndex].currentState = ClipState.State.PLAYING;
-                        // bitwig doesn't send this
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.PLAYING;
-                        break;
-                    case 2:
-                        clipStates_[track_][slotIndex].currentState = ClipState.State.RECORDING;
-                        // bitwig doesn't send this
-                        clipStates_[track_][slotIndex].queuedState = ClipState.State.RECORDING;
-                        break;
-                }
-            }
-            updateClipLED(track_, slotIndex);
+            if ((playbackState < ClipSlotStore.STOPPED) || (playbackState > ClipSlotStore.RECORDING))
+                return;
+            int slot = slots_.index(track_, slotIndex);
+            boolean wasQueued = slots_.hasChangeQueued(slot);
+            boolean wasPlaying = slots_.getCurrentState(slot) == ClipSlotStore.PLAYING;
+            if (isQueued)
+                slots_.setQueuedState(slot, playbackState);
+            else
+                slots_.setCurrentState(slot, playbackState);
+            queuedSlots_ += (slots_.hasChangeQueued(slot) ? 1 : 0) - (wasQueued ? 1 : 0);
+            playingSlots_ += ((slots_.getCurrentState(slot) == ClipSlotStore.PLAYING) ? 1 : 0) - (wasPlaying ? 1 : 0);
+            metrics_.increment(MetricsRegistry.CLIP_OBSERVERS);
+            markBankSlotDirty(track_, slotIndex);
         }
         private int track_;
     }
@@ -518,17 +1124,46 @@ public class ClipLauncherPage extends LinnstrumentPage {
         @Override
         public void valueChanged(int scene, float red, float green, float blue)
         {
-            Color c = Color.fromRGB(red, green, blue);
-            clipColors_[track_][scene] = c;
-            updateClipLED(track_, scene);
+            slots_.setRGB(slots_.index(track_, scene), (Math.round(red * 255) << 16) | (Math.round(green * 255) << 8) | Math.round(blue * 255));
+            metrics_.increment(MetricsRegistry.CLIP_OBSERVERS);
+            markBankSlotDirty(track_, scene);
         }
         private int track_;
     }
+    private class VuMeterObserver implements IntegerValueChangedCallback
+    {
+        VuMeterObserver(int track)
+        {
+            track_ = track;
+        }
+
+        @Override
+        public void valueChanged(int level) {
+            vuLevels_[track_] = level;
+        }
+        private final int track_;
+    }
+
     private class CursorTrackObserver implements IntegerValueChangedCallback
     {
         @Override
         public void valueChanged(int newValue) {
-            updateCursorTrackLED(newValue);
+            cursorBankIndex_ = newValue;
+            updateCursorTrackLED();
+        }
+    }
+
+    /** keeps the selected track in view, like the bank following the cursor track did */
+    private class CursorTrackPositionObserver implements IntegerValueChangedCallback
+    {
+        @Override
+        public void valueChanged(int newValue) {
+            if (newValue < 0)
+                return;
+            if (newValue < viewTrack_)
+                moveView(newValue, viewScene_);
+            else if (newValue >= viewTrack_ + numTracksVisible_)
+                moveView(newValue - numTracksVisible_ + 1, viewScene_);
         }
     }
 
@@ -536,35 +1171,106 @@ public class ClipLauncherPage extends LinnstrumentPage {
     {
         @Override
         public void valueChanged(int newValue) {
-            updateCursorTrackLED(trackBank_.cursorIndex().get());
+            // the cached slots now belong to other tracks
+            bankTrack_ = newValue;
+            markViewDirty();
+            updateCursorTrackLED();
+            scheduleRecenter();
         }
     }
 
-    private TrackBank recordBank_; // used to be able to access cells into which is being recorded,
-                                   // even if the main track bank scrolls around
+    private class SceneBankScrollPositionObserver implements IntegerValueChangedCallback
+    {
+        @Override
+        public void valueChanged(int newValue) {
+            bankScene_ = newValue;
+            markViewDirty();
+            scheduleRecenter();
+        }
+    }
+
+    private RecordingTracker recordings_;
     private TrackBank trackBank_;
     private CursorTrack cursorTrack_;
     private BlinkTimer timer_;
-    private ClipState[][] clipStates_;
-    private boolean[][] hasContent_;
-    private Color[][] clipColors_;
+    private ClipSlotStore slots_;   // cache of the observed window
+    private Color[][] shownColors_; // colour the clip's LED shows (without blinking), per visible slot
+    private final int bankTracks_;  // size of the observed window
+    private final int bankScenes_;
+    private int bankTrack_;         // scroll position of the observed window
+    private int bankScene_;
+    private int viewTrack_;         // track and scene shown in the top left clip cell
+    private int viewScene_;
+    private int recenterGeneration_;
+    private int cursorBankIndex_ = -1;
+    private final MetricsRegistry metrics_;
+    private int queuedSlots_;       // observed slots with a queued change
+    private int playingSlots_;      // observed slots that play
+    private double launchQuantizationBeats_; // 0 if clips launch at once
+    private TransportScheduler.Task progressTask_;
+    private int progressShown_;     // what the low row shows in progress mode: PROGRESSBAR or PROGRESSPLAYHEAD | cells
+    private boolean visible_;
+    private int[] vuLevels_;        // per observed track, 0 to VURANGE - 1
+    private boolean meterMode_;
+    private TransportScheduler.Task meterTask_;
+    private int meterPeriodMillis_;
+    private double[] meterPeaks_;   // per visible track: peak hold in cells, falling
+    private int[] peakHoldMillis_;  // per visible track: time left until the peak starts to fall
+    private int[] shownMeters_;     // per visible track: height << 8 | peak cell as drawn, -1 to force drawing
+    private InputRouter routes_;
+    private int routeMode_ = ROUTE_CLIPS;
+    private ClipOverview overview_; // null if the overview is switched off
+    private boolean overviewMode_;
+    private boolean distinctNeighbourColors_ = false;
+    private long[] dirtySlots_; // slots (track * numScenesVisible_ + scene) whose LED must be recomputed
+    private int chordWindowMillis_;
+    private int chordGeneration_;
+    private int[] pendingTracks_;   // absolute positions of the clips waiting for the chord window to close
+    private int[] pendingScenes_;
+    private int pendingCount_;
+    private ReleaseBehaviour releaseBehaviour_ = ReleaseBehaviour.NONE;
+    private int[] heldTracks_;      // per visible slot: absolute track of a held clip button, -1 if not held
+    private int[] heldScenes_;
+    private int[] returnScenes_;    // the clip that played on the track before, -1 if none did, UNKNOWNSCENE if one outside the window did
+    /** what releasing a clip button does: nothing, stop the track, or go back to the clip that played before */
+    enum ReleaseBehaviour { NONE, STOP, RETURN }
     private enum Mode { LAUNCH, RECORD, DELETE, COPYSELSOURCE, COPYSELDESTCLIP, COPYSELDESTSCENE }
     private Mode mode_;
-    private enum LowRowMode { STOP, SELECT }
+    private enum LowRowMode { STOP, SELECT, PROGRESS }
     private LowRowMode lowRowMode_;
     private int currentCursorTrackLEDIndex_;
     private boolean finishRecOnShowPage_;
     private int numScenesVisible_;
     private int numTracksVisible_;
-    private boolean currentlyRecording_;
 
     private Scene copyBufferScene_;
     private ClipLauncherSlot copyBufferClip_;
 
+    private static final long RECENTERDELAYMS = 250;
+    private static final int UNKNOWNSCENE = -2;
+    private static final int VURANGE = 128;
+    private static final int PEAKHOLDMS = 1000;
+    private static final double PEAKDECAY = 6.0; // cells per second
+    static final int DEFMETERFPS = 25;
+    private static final double PROGRESSTICKBEATS = 0.125; // like the blink timer
+    private static final int PROGRESSCELLS = 0xFF;
+    private static final int PROGRESSBAR = 0x100;
+    private static final int PROGRESSPLAYHEAD = 0x200;
+
+    private static final int RECORDINGBANKS = 4; // recordings that can be finished when the page is shown again
+
+    // route modes of routes_
+    private static final int ROUTE_CLIPS = 0;
+    private static final int ROUTE_OVERVIEW = 1;
+    private static final int ROUTE_METERS = 2;
+    private static final int ROUTES = 3;
+
     private static final int RECORDBTTNY = 0;
     private static final int COPYBTTNY = 1;
     private static final int DELETEBTTNY = 2;
     private static final int LOWROWMODEBTTNY = 3;
+    private static final int OVERVIEWBTTNY = 6;
+    private static final int METERBTTNY = 7;
     
     private static final int SCROLLUPBTTNY = 0;
     private static final int SCROLLUPPAGEBTTNY = 1;
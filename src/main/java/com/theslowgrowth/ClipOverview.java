@@ -0,0 +1,194 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.callback.ClipLauncherSlotBankPlaybackStateChangedCallback;
+import com.bitwig.extension.callback.IndexedBooleanValueChangedCallback;
+import com.bitwig.extension.callback.IntegerValueChangedCallback;
+import com.bitwig.extension.controller.api.*;
+
+/**
+ * A zoomed-out view of the session: a grid of blocks, each standing for blockSize x blockSize clip slots,
+ * observed through a track bank of its own. Every block counts its slots with content, playing, queued and
+ * recording clips. The counts are updated from the single slot that changed, so keeping the aggregate
+ * costs the same no matter how large the blocks are. Blocks whose flags changed are marked dirty.
+ */
+class ClipOverview
+{
+    // aggregate flags of a block
+    static final int CONTENT = 1;
+    static final int PLAYING = 2;
+    static final int QUEUED = 4;
+    static final int RECORDING = 8;
+
+    ClipOverview(ControllerHost host, int blocksX, int blocksY, int blockSize)
+    {
+        blocksX_ = blocksX;
+        blocksY_ = blocksY;
+        blockSize_ = blockSize;
+        slots_ = new ClipSlotStore(blocksX * blockSize, blocksY * blockSize);
+        counts_ = new int[blocksX * blocksY * FLAGS];
+        dirtyBlocks_ = new long[(blocksX * blocksY + 63) >>> 6];
+
+        bank_ = host.createMainTrackBank(slots_.getTracks(), 0, slots_.getScenes());
+        bank_.scrollPosition().markInterested();
+        bank_.sceneBank().scrollPosition().markInterested();
+        for (int t = 0; t < slots_.getTracks(); t++)
+        {
+            ClipLauncherSlotBank clipLauncher = bank_.getItemAt(t).clipLauncherSlotBank();
+            clipLauncher.addHasContentObserver(new HasContentObserver(t));
+            clipLauncher.addPlaybackStateObserver(new PlaybackStateObserver(t));
+        }
+        bank_.scrollPosition().addValueObserver(new ScrollPositionObserver());
+        bank_.sceneBank().scrollPosition().addValueObserver(new ScrollPositionObserver());
+        host.println(String.format("Clip overview: %d x %d blocks of %d x %d slots, %d slot observers, %d bytes of slot cache",
+                blocksX, blocksY, blockSize, blockSize, 2 * slots_.getTracks(), slots_.getBytes() + 4L * counts_.length));
+    }
+
+    int getBlockSize() { return blockSize_; }
+
+    /** @return the session track shown by the left column of blocks */
+    int getTrackPosition()
+    {
+        return bank_.scrollPosition().get();
+    }
+
+    /** @return the session scene shown by the top row of blocks */
+    int getScenePosition()
+    {
+        return bank_.sceneBank().scrollPosition().get();
+    }
+
+    /**
+     * @return CONTENT, PLAYING, QUEUED and RECORDING of the block, set if any of its slots has them
+     */
+    int getFlags(int blockX, int blockY)
+    {
+        int base = (blockX * blocksY_ + blockY) * FLAGS;
+        int flags = 0;
+        for (int k = 0; k < FLAGS; k++)
+        {
+            if (counts_[base + k] > 0)
+                flags |= 1 << k;
+        }
+        return flags;
+    }
+
+    /**
+     * moves the overview by a number of blocks
+     */
+    void scroll(int blocksX, int blocksY)
+    {
+        if (blocksX != 0)
+            bank_.scrollBy(blocksX * blockSize_);
+        if (blocksY != 0)
+            bank_.sceneBank().scrollBy(blocksY * blockSize_);
+    }
+
+    void markAllDirty()
+    {
+        for (int b = 0; b < blocksX_ * blocksY_; b++)
+            dirtyBlocks_[b >>> 6] |= 1L << b;
+    }
+
+    /**
+     * @return a dirty block (blockX * blocksY + blockY), which is marked clean, or -1 if there is none
+     */
+    int pollDirtyBlock()
+    {
+        for (int w = 0; w < dirtyBlocks_.length; w++)
+        {
+            if (dirtyBlocks_[w] != 0)
+            {
+                int bit = Long.numberOfTrailingZeros(dirtyBlocks_[w]);
+                dirtyBlocks_[w] &= ~(1L << bit);
+                return (w << 6) + bit;
+            }
+        }
+        return -1;
+    }
+
+    private int flagsOf(int slot)
+    {
+        int current = slots_.getCurrentState(slot);
+        return (slots_.hasContent(slot) ? CONTENT : 0)
+             | ((current == ClipSlotStore.PLAYING) ? PLAYING : 0)
+             | (slots_.hasChangeQueued(slot) ? QUEUED : 0)
+             | ((current == ClipSlotStore.RECORDING) ? RECORDING : 0);
+    }
+
+    /** applies the difference of a slot's flags to the counts of its block */
+    private void slotChanged(int track, int scene, int before, int after)
+    {
+        if (before == after)
+            return;
+        int block = (track / blockSize_) * blocksY_ + scene / blockSize_;
+        int base = block * FLAGS;
+        for (int k = 0; k < FLAGS; k++)
+        {
+            int bit = 1 << k;
+            if ((before & bit) != (after & bit))
+                counts_[base + k] += ((after & bit) != 0) ? 1 : -1;
+        }
+        dirtyBlocks_[block >>> 6] |= 1L << block;
+    }
+
+    private class HasContentObserver implements IndexedBooleanValueChangedCallback
+    {
+        HasContentObserver(int track)
+        {
+            track_ = track;
+        }
+
+        @Override
+        public void valueChanged(int scene, boolean hasContent)
+        {
+            int slot = slots_.index(track_, scene);
+            int before = flagsOf(slot);
+            slots_.setHasContent(slot, hasContent);
+            slotChanged(track_, scene, before, flagsOf(slot));
+        }
+        private final int track_;
+    }
+
+    private class PlaybackStateObserver implements ClipLauncherSlotBankPlaybackStateChangedCallback
+    {
+        PlaybackStateObserver(int track)
+        {
+            track_ = track;
+        }
+
+        @Override
+        public void playbackStateChanged(int scene, int playbackState, boolean isQueued)
+        {
+            if ((playbackState < ClipSlotStore.STOPPED) || (playbackState > ClipSlotStore.RECORDING))
+                return;
+            int slot = slots_.index(track_, scene);
+            int before = flagsOf(slot);
+            if (isQueued)
+                slots_.setQueuedState(slot, playbackState);
+            else
+                slots_.setCurrentState(slot, playbackState);
+            slotChanged(track_, scene, before, flagsOf(slot));
+        }
+        private final int track_;
+    }
+
+    private class ScrollPositionObserver implements IntegerValueChangedCallback
+    {
+        @Override
+        public void valueChanged(int newValue)
+        {
+            // the slots get resent, but the blocks now stand for other parts of the session
+            markAllDirty();
+        }
+    }
+
+    private static final int FLAGS = 4;
+
+    private final int blocksX_;
+    private final int blocksY_;
+    private final int blockSize_;
+    private final TrackBank bank_;
+    private final ClipSlotStore slots_;  // last reported state of every observed slot
+    private final int[] counts_;         // per block and flag: slots that have the flag
+    private final long[] dirtyBlocks_;
+}
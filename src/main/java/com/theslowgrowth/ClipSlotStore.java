@@ -0,0 +1,134 @@
+package com.theslowgrowth;
+
+/**
+ * State of a window of clip launcher slots, one int per slot (indexed track * scenes + scene):
+ * <pre>
+ *   bits 0-1   current playback state (STOPPED, PLAYING, RECORDING)
+ *   bits 2-3   queued playback state
+ *   bit  4     has content
+ *   bits 5-8   colour code
+ *   bits 9-12  runner-up colour code
+ * </pre>
+ * The clip's RGB colour is only needed to map it again and is kept in a second array.
+ */
+class ClipSlotStore
+{
+    // playback states as reported by bitwig
+    static final int STOPPED = 0;
+    static final int PLAYING = 1;
+    static final int RECORDING = 2;
+
+    ClipSlotStore(int tracks, int scenes)
+    {
+        tracks_ = tracks;
+        scenes_ = scenes;
+        slots_ = new int[tracks * scenes];
+        rgb_ = new int[tracks * scenes];
+    }
+
+    int getTracks() { return tracks_; }
+    int getScenes() { return scenes_; }
+    int size() { return slots_.length; }
+
+    int index(int track, int scene)
+    {
+        return track * scenes_ + scene;
+    }
+
+    /**
+     * @return memory used by the store in bytes, without the object headers
+     */
+    long getBytes()
+    {
+        return 4L * slots_.length + 4L * rgb_.length;
+    }
+
+    int getCurrentState(int i)
+    {
+        return slots_[i] & STATEMASK;
+    }
+
+    int getQueuedState(int i)
+    {
+        return (slots_[i] >>> QUEUEDSHIFT) & STATEMASK;
+    }
+
+    boolean hasChangeQueued(int i)
+    {
+        return getCurrentState(i) != getQueuedState(i);
+    }
+
+    /**
+     * sets the state a slot is in now. Bitwig doesn't report that queued changes have been done, so the
+     * queued state is set as well.
+     */
+    void setCurrentState(int i, int state)
+    {
+        slots_[i] = (slots_[i] & ~(STATEMASK | (STATEMASK << QUEUEDSHIFT))) | state | (state << QUEUEDSHIFT);
+    }
+
+    void setQueuedState(int i, int state)
+    {
+        slots_[i] = (slots_[i] & ~(STATEMASK << QUEUEDSHIFT)) | (state << QUEUEDSHIFT);
+    }
+
+    boolean hasContent(int i)
+    {
+        return (slots_[i] & CONTENTBIT) != 0;
+    }
+
+    void setHasContent(int i, boolean hasContent)
+    {
+        slots_[i] = hasContent ? (slots_[i] | CONTENTBIT) : (slots_[i] & ~CONTENTBIT);
+    }
+
+    Color getColor(int i)
+    {
+        return Color.fromValue((slots_[i] >>> COLORSHIFT) & COLORMASK);
+    }
+
+    Color getAlternativeColor(int i)
+    {
+        return Color.fromValue((slots_[i] >>> ALTCOLORSHIFT) & COLORMASK);
+    }
+
+    int getRGB(int i)
+    {
+        return rgb_[i];
+    }
+
+    /**
+     * @param rgb the colour as 0xRRGGBB, the LinnStrument colours are mapped from it with Color.fromRGB()
+     */
+    void setRGB(int i, int rgb)
+    {
+        rgb_[i] = rgb;
+        mapColor(i);
+    }
+
+    /**
+     * maps the slot's RGB colour again, after the colour mapping has changed
+     */
+    void mapColor(int i)
+    {
+        int rgb = rgb_[i];
+        float r = ((rgb >> 16) & 0xFF) / 255.f;
+        float g = ((rgb >> 8) & 0xFF) / 255.f;
+        float b = (rgb & 0xFF) / 255.f;
+        int colors = (Color.fromRGB(r, g, b).getValue() << COLORSHIFT)
+                | (Color.alternativeFromRGB(r, g, b).getValue() << ALTCOLORSHIFT);
+        slots_[i] = (slots_[i] & ~((COLORMASK << COLORSHIFT) | (COLORMASK << ALTCOLORSHIFT))) | colors;
+    }
+
+    private static final int STATEMASK = 0x3;
+    private static final int QUEUEDSHIFT = 2;
+    private static final int CONTENTBIT = 1 << 4;
+    private static final int COLORMASK = 0xF;
+    private static final int COLORSHIFT = 5;
+    private static final int ALTCOLORSHIFT = 9;
+
+    private final int tracks_;
+    private final int scenes_;
+    private final int[] slots_;
+    private final int[] rgb_;
+}
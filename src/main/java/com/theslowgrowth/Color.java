@@ -25,12 +25,40 @@ public enum Color {
         return value_;
     }
 
-    /** convert from RGB colours
+    /** look up a colour by its LinnStrument colour code
+     * @param value colour code as returned by getValue()
+     */
+    public static Color fromValue(int value) {
+        return BY_VALUE[value];
+    }
+
+    /** convert from RGB colours with the current mapping (see {@link #setMapping(ColorMapping)})
      * @param r     red value
      * @param g     green value
      * @param b     blue value
      */
     public static Color fromRGB(float r, float g, float b) {
+        return mapping_.map(r, g, b);
+    }
+
+    /** the runner-up of fromRGB(), for telling apart neighbouring colours that map to the same colour
+     */
+    public static Color alternativeFromRGB(float r, float g, float b) {
+        return mapping_.alternative(r, g, b);
+    }
+
+    /** replaces the mapping used by fromRGB(). Wrap expensive mappings into a {@link ColorLUT}.
+     */
+    public static void setMapping(ColorMapping mapping) {
+        mapping_ = mapping;
+    }
+
+    /** convert from RGB colours by picking the nearest hue, exact but slow.
+     * @param r     red value
+     * @param g     green value
+     * @param b     blue value
+     */
+    public static Color fromHue(float r, float g, float b) {
         float maximum = Math.max(r, Math.max(g, b));
         float minimum = Math.min(r, Math.min(g, b));
         float delta = maximum - minimum;
@@ -75,4 +103,19 @@ public enum Color {
     }
 
     private int value_;
+
+    /** the default mapping, a quantized version of {@link #fromHue(float, float, float)} */
+    public static final ColorMapping HUE_LUT;
+
+    private static final Color[] BY_VALUE;
+    private static ColorMapping mapping_;
+
+    static {
+        BY_VALUE = new Color[values().length];
+        for (Color c : values())
+            BY_VALUE[c.value_] = c;
+        // needs BY_VALUE
+        HUE_LUT = new ColorLUT(Color::fromHue);
+        mapping_ = HUE_LUT;
+    }
 }
@@ -0,0 +1,63 @@
+package com.theslowgrowth;
+
+/**
+ * A colour mapping quantized into BINS x BINS x BINS cells. The source mapping (and its alternative)
+ * is evaluated once per cell at the cell's centre, after that every conversion is a single array lookup.
+ */
+public class ColorLUT implements ColorMapping
+{
+    public static final int BITS = 5;
+    public static final int BINS = 1 << BITS;
+
+    public ColorLUT(ColorMapping source)
+    {
+        table_ = new byte[BINS * BINS * BINS];
+        alternatives_ = new byte[BINS * BINS * BINS];
+        for (int r = 0; r < BINS; r++)
+        {
+            for (int g = 0; g < BINS; g++)
+            {
+                for (int b = 0; b < BINS; b++)
+                {
+                    int i = index(r, g, b);
+                    table_[i] = (byte) source.map(center(r), center(g), center(b)).getValue();
+                    alternatives_[i] = (byte) source.alternative(center(r), center(g), center(b)).getValue();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Color map(float r, float g, float b)
+    {
+        return Color.fromValue(table_[index(bin(r), bin(g), bin(b))]);
+    }
+
+    @Override
+    public Color alternative(float r, float g, float b)
+    {
+        return Color.fromValue(alternatives_[index(bin(r), bin(g), bin(b))]);
+    }
+
+    /**
+     * @return the value at the centre of bin i, the point the source mapping was evaluated at
+     */
+    public static float center(int i)
+    {
+        return (i + 0.5f) / BINS;
+    }
+
+    private static int bin(float v)
+    {
+        int i = (int) (v * BINS); // NaN becomes 0
+        return (i < 0) ? 0 : ((i >= BINS) ? BINS - 1 : i);
+    }
+
+    private static int index(int r, int g, int b)
+    {
+        return (((r << BITS) | g) << BITS) | b;
+    }
+
+    private final byte[] table_; // LinnStrument colour codes
+    private final byte[] alternatives_;
+}
@@ -0,0 +1,23 @@
+package com.theslowgrowth;
+
+/**
+ * Maps a clip or track colour to one of LinnStrument's colours
+ */
+public interface ColorMapping
+{
+    /**
+     * @param r red value, 0..1
+     * @param g green value, 0..1
+     * @param b blue value, 0..1
+     */
+    Color map(float r, float g, float b);
+
+    /**
+     * @return the second best colour, used to tell apart neighbours that map to the same colour.
+     *         Mappings without a meaningful runner-up return map(r, g, b).
+     */
+    default Color alternative(float r, float g, float b)
+    {
+        return map(r, g, b);
+    }
+}
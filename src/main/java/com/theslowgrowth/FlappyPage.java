@@ -23,16 +23,7 @@ public class FlappyPage extends LinnstrumentPage {
         boolean scored;
     }
 
-    private boolean active = false;
-    private final Runnable gameLoopRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (!active) return;
-            updateGame();
-            drawAll();
-            getParent().getHost().scheduleTask(this, 200);
-        }
-    };
+    private final TransportScheduler.Task gameLoopTask_;
 
     private State gameState = State.READY;
     private float birdY = 4.0f;
@@ -57,20 +48,26 @@ public class FlappyPage extends LinnstrumentPage {
 
     public FlappyPage(int width, int height, LinnstrumentClipLauncherExtension parent) {
         super(width, height, parent);
+        gameLoopTask_ = parent.getScheduler().createMillisTask(this::gameLoop, 200, MetricsRegistry.TASK_FLAPPY);
     }
 
     @Override
     protected void showImpl() {
         getParent().getHost().showPopupNotification("LinnStrument Flappy Bird!");
-        active = true;
         resetGame();
         gameState = State.READY;
-        getParent().getHost().scheduleTask(gameLoopRunnable, 0);
+        drawAll();
+        getParent().getScheduler().start(gameLoopTask_);
     }
 
     @Override
     protected void hideImpl() {
-        active = false;
+        getParent().getScheduler().stop(gameLoopTask_);
+    }
+
+    private void gameLoop() {
+        updateGame();
+        drawAll();
     }
 
     @Override
@@ -78,7 +75,7 @@ public class FlappyPage extends LinnstrumentPage {
 
         if (x == 0) return;  // Ignore column 0 (UI column)
 
-        getParent().getQwertyOut().sendMidi(0x91, 60, velocity);
+        getParent().sendToSecondOut(0x91, 60, velocity);
 
         float v = velocity / 127.0f;
 
@@ -97,7 +94,7 @@ public class FlappyPage extends LinnstrumentPage {
     @Override
     public void buttonUp(int x, int y) {
         // Nothing
-        getParent().getQwertyOut().sendMidi(0x81, 60, 0);
+        getParent().sendToSecondOut(0x81, 60, 0);
     }
 
     private void resetGame() {
@@ -108,7 +105,7 @@ public class FlappyPage extends LinnstrumentPage {
         pipeSpeed = 4.5f;
         groundOffset = 0.0f;
         dyingFrames = 0;
-        getParent().getQwertyOut().sendMidi(0x81, 72, 0);
+        getParent().sendToSecondOut(0x81, 72, 0);
     }
 
     private void spawnPipe() {
@@ -128,7 +125,7 @@ public class FlappyPage extends LinnstrumentPage {
             if (dyingFrames <= 0) {
                 gameState = State.READY;
                 if(deathNote) {
-                    getParent().getQwertyOut().sendMidi(0x81, 72, 0);
+                    getParent().sendToSecondOut(0x81, 72, 0);
                     deathNote = false;
                 }
             }
@@ -153,7 +150,7 @@ public class FlappyPage extends LinnstrumentPage {
         if (birdY < 0.3f || birdY > 6.7f) {
             gameState = State.DYING;
             deathNote = true;
-            getParent().getQwertyOut().sendMidi(0x91, 72, 127);
+            getParent().sendToSecondOut(0x91, 72, 127);
             dyingFrames = 10;
             return;
         }
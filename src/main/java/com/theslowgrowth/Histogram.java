@@ -0,0 +1,76 @@
+package com.theslowgrowth;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-bucket histogram of durations in microseconds. Buckets are log-linear (8 per power of two),
+ * so every percentile is accurate to about 12%. Recording never allocates.
+ */
+public class Histogram
+{
+    public Histogram()
+    {
+        counts_ = new long[NUMBUCKETS];
+    }
+
+    public void record(long micros)
+    {
+        if (micros < 0)
+            micros = 0;
+        counts_[bucketOf(micros)]++;
+        total_++;
+    }
+
+    public long count()
+    {
+        return total_;
+    }
+
+    /**
+     * @param q quantile between 0 and 1, e.g. 0.99
+     * @return the lower bound (in microseconds) of the bucket that holds the quantile, 0 if empty
+     */
+    public long percentile(double q)
+    {
+        if (total_ == 0)
+            return 0;
+        long rank = (long) Math.ceil(q * total_);
+        long seen = 0;
+        for (int i = 0; i < NUMBUCKETS; i++)
+        {
+            seen += counts_[i];
+            if (seen >= rank)
+                return lowerBoundOf(i);
+        }
+        return lowerBoundOf(NUMBUCKETS - 1);
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts_, 0);
+        total_ = 0;
+    }
+
+    private static int bucketOf(long v)
+    {
+        if (v < SUBBUCKETS)
+            return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int index = (msb - 2) * SUBBUCKETS + (int) ((v >>> (msb - 3)) & (SUBBUCKETS - 1));
+        return Math.min(index, NUMBUCKETS - 1);
+    }
+
+    private static long lowerBoundOf(int index)
+    {
+        if (index < SUBBUCKETS)
+            return index;
+        int msb = index / SUBBUCKETS + 2;
+        return (long) (SUBBUCKETS + index % SUBBUCKETS) << (msb - 3);
+    }
+
+    private final long[] counts_;
+    private long total_;
+
+    private static final int SUBBUCKETS = 8;
+    private static final int NUMBUCKETS = 24 * SUBBUCKETS; // up to ~63 seconds
+}
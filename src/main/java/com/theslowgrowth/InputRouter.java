@@ -0,0 +1,93 @@
+package com.theslowgrowth;
+
+/**
+ * Maps the cells of the surface to the handlers of their presses. Handlers are bound to rectangular
+ * regions (a column of buttons, the clip area, ...) once, per route mode, and are kept in a flat table
+ * indexed (mode * width + x) * height + y, so dispatching a press is a single array load.
+ * Regions can be rebound at any time, e.g. when a page changes its layout.
+ */
+class InputRouter
+{
+    interface Handler
+    {
+        void pressed(int x, int y, int velocity);
+
+        default void released(int x, int y) {}
+    }
+
+    /**
+     * @param modes number of route modes, every mode has a table of its own
+     */
+    InputRouter(int width, int height, int modes)
+    {
+        width_ = width;
+        height_ = height;
+        modes_ = modes;
+        handlers_ = new Handler[modes * width * height];
+    }
+
+    int getWidth() { return width_; }
+    int getHeight() { return height_; }
+
+    /**
+     * binds a region of one mode to a handler, replacing what was bound there. The region is clipped to the surface.
+     * @param handler the handler, null to unbind the region
+     */
+    void bind(int mode, int x, int y, int width, int height, Handler handler)
+    {
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(width_, x + width);
+        int y1 = Math.min(height_, y + height);
+        for (int cx = x0; cx < x1; cx++)
+        {
+            for (int cy = y0; cy < y1; cy++)
+                handlers_[(mode * width_ + cx) * height_ + cy] = handler;
+        }
+    }
+
+    /**
+     * binds a region to the same handler in all modes
+     */
+    void bindAllModes(int x, int y, int width, int height, Handler handler)
+    {
+        for (int mode = 0; mode < modes_; mode++)
+            bind(mode, x, y, width, height, handler);
+    }
+
+    /**
+     * @return true, if a handler is bound to the cell and got the press
+     */
+    boolean press(int mode, int x, int y, int velocity)
+    {
+        Handler h = get(mode, x, y);
+        if (h == null)
+            return false;
+        h.pressed(x, y, velocity);
+        return true;
+    }
+
+    /**
+     * @return true, if a handler is bound to the cell and got the release
+     */
+    boolean release(int mode, int x, int y)
+    {
+        Handler h = get(mode, x, y);
+        if (h == null)
+            return false;
+        h.released(x, y);
+        return true;
+    }
+
+    private Handler get(int mode, int x, int y)
+    {
+        if ((x < 0) || (x >= width_) || (y < 0) || (y >= height_))
+            return null;
+        return handlers_[(mode * width_ + x) * height_ + y];
+    }
+
+    private final int width_;
+    private final int height_;
+    private final int modes_;
+    private final Handler[] handlers_;
+}
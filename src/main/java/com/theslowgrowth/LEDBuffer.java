@@ -1,22 +1,22 @@
 package com.theslowgrowth;
 
+import java.util.Arrays;
+
+/**
+ * LED state of the surface, packed as one colour code per cell plus a dirty bitset.
+ * Cells are indexed column-major (x * height + y), so walking the dirty cells in index
+ * order visits them column by column.
+ */
 public class LEDBuffer
 {
     public LEDBuffer(int width, int height)
     {
         width_ = width;
         height_ = height;
-        buffer_ = new Color[width][height];
-        dirty_ = new boolean[width][height];
-        for (int x = 0; x < width; x++)
-        {
-            for (int y = 0; y < height; y++)
-            {
-                buffer_[x][y] = Color.OFF;
-                dirty_[x][y] = false;
-            }
-        }
-        globalDirty_ = false;
+        size_ = width * height;
+        colors_ = new byte[size_]; // all zero = Color.OFF
+        dirty_ = new long[(size_ + 63) >>> 6];
+        dirtyCount_ = 0;
     }
 
     public boolean set(int x, int y, Color value)
@@ -30,11 +30,15 @@ public class LEDBuffer
         if (y >= height_)
             return false;
 
-        if (buffer_[x][y] != value)
+        int i = x * height_ + y;
+        byte v = (byte) value.getValue();
+        if (colors_[i] != v)
         {
-            buffer_[x][y] = value;
-            dirty_[x][y] = true;
-            globalDirty_ = true;
+            colors_[i] = v;
+            if (!markDirty(i))
+                coalescedCount_++;
+            if (latency_ != null)
+                stamp(i, latency_.getToken());
             return true;
         }
         else
@@ -52,37 +56,29 @@ public class LEDBuffer
         if (y >= height_)
             return;
 
-        dirty_[x][y] = true;
-        globalDirty_ = true;
+        markDirty(x * height_ + y);
     }
 
     public void flagDirty()
     {
-        for (int x = 0; x < dirty_.length; x++)
-        {
-            for (int y = 0; y < dirty_[x].length; y++)
-            {
-                dirty_[x][y] = true;
-            }
-        }
-        globalDirty_ = true;
+        Arrays.fill(dirty_, -1L);
+        int tail = size_ & 63;
+        if (tail != 0)
+            dirty_[dirty_.length - 1] = (1L << tail) - 1;
+        dirtyCount_ = size_;
     }
 
     public void flagClean()
     {
-        for (int x = 0; x < dirty_.length; x++)
-        {
-            for (int y = 0; y < dirty_[x].length; y++)
-            {
-                dirty_[x][y] = false;
-            }
-        }
-        globalDirty_ = false;
+        if (dirtyCount_ == 0)
+            return;
+        Arrays.fill(dirty_, 0L);
+        dirtyCount_ = 0;
     }
 
     public boolean isDirty()
     {
-        return globalDirty_;
+        return dirtyCount_ > 0;
     }
 
     public boolean isDirty(int x, int y)
@@ -96,7 +92,88 @@ public class LEDBuffer
         if (y >= height_)
             return false;
 
-        return dirty_[x][y];
+        int i = x * height_ + y;
+        return (dirty_[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the number of cells that are currently flagged dirty
+     */
+    public int getDirtyCount()
+    {
+        return dirtyCount_;
+    }
+
+    /**
+     * @return how often a cell was changed again while it was still waiting to be sent
+     */
+    public long getCoalescedCount()
+    {
+        return coalescedCount_;
+    }
+
+    /**
+     * Finds the next dirty cell. Iterate all dirty cells with
+     * <pre>for (int i = b.nextDirty(0); i >= 0; i = b.nextDirty(i + 1))</pre>
+     * @param fromIndex cell index to start searching from (inclusive)
+     * @return the index of the next dirty cell, or -1 if there is none
+     */
+    public int nextDirty(int fromIndex)
+    {
+        if (fromIndex >= size_)
+            return -1;
+        int w = fromIndex >>> 6;
+        long word = dirty_[w] & (-1L << fromIndex);
+        while (true)
+        {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == dirty_.length)
+                return -1;
+            word = dirty_[w];
+        }
+    }
+
+    /**
+     * like {@link #nextDirty(int)}, but only considers cells that are set in mask
+     * @param mask cell bitset with the same layout as the dirty flags
+     */
+    public int nextDirty(int fromIndex, long[] mask)
+    {
+        if (fromIndex >= size_)
+            return -1;
+        int w = fromIndex >>> 6;
+        long word = dirty_[w] & mask[w] & (-1L << fromIndex);
+        while (true)
+        {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == dirty_.length)
+                return -1;
+            word = dirty_[w] & mask[w];
+        }
+    }
+
+    public void clearDirty(int index)
+    {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if ((dirty_[w] & bit) != 0)
+        {
+            dirty_[w] &= ~bit;
+            dirtyCount_--;
+        }
+    }
+
+    public int indexX(int index) { return index / height_; }
+    public int indexY(int index) { return index % height_; }
+
+    /**
+     * @return the raw colour code (see {@link Color#getValue()}) of a cell index
+     */
+    public int getValue(int index)
+    {
+        return colors_[index];
     }
 
     public Color get(int x, int y)
@@ -110,33 +187,143 @@ public class LEDBuffer
         if (y >= height_)
             return Color.OFF;
 
-        return buffer_[x][y];
+        return Color.fromValue(colors_[x * height_ + y]);
     }
 
+    /**
+     * copies all cells of other that differ from this buffer and flags them dirty
+     */
     public void mergeWith(LEDBuffer other)
     {
-        int mx = Math.min(buffer_.length, other.buffer_.length);
+        if (other.height_ == height_ && other.width_ == width_)
+        {
+            for (int i = 0; i < size_; i++)
+            {
+                long token = other.takeToken(i);
+                if (colors_[i] != other.colors_[i])
+                {
+                    colors_[i] = other.colors_[i];
+                    if (!markDirty(i))
+                        coalescedCount_++;
+                    stamp(i, token);
+                }
+            }
+            return;
+        }
+
+        int mx = Math.min(width_, other.width_);
+        int my = Math.min(height_, other.height_);
         for (int x = 0; x < mx; x++)
         {
-            int my = Math.min(buffer_[x].length, other.buffer_[x].length);
             for (int y = 0; y < my; y++)
             {
-                if (buffer_[x][y] != other.buffer_[x][y])
+                byte v = other.colors_[x * other.height_ + y];
+                long token = other.takeToken(x * other.height_ + y);
+                int i = x * height_ + y;
+                if (colors_[i] != v)
                 {
-                    buffer_[x][y] = other.buffer_[x][y];
-                    dirty_[x][y] = true;
-                    globalDirty_ = true;
+                    colors_[i] = v;
+                    if (!markDirty(i))
+                        coalescedCount_++;
+                    stamp(i, token);
                 }
             }
         }
     }
 
+    /**
+     * sets all cells to value
+     */
+    public void fill(Color value)
+    {
+        byte v = (byte) value.getValue();
+        for (int i = 0; i < size_; i++)
+        {
+            if (colors_[i] != v)
+            {
+                colors_[i] = v;
+                if (!markDirty(i))
+                    coalescedCount_++;
+                if (latency_ != null)
+                    stamp(i, latency_.getToken());
+            }
+        }
+    }
+
+    /**
+     * like {@link #mergeWith(LEDBuffer)}, but only looks at the cells that are flagged dirty in other.
+     * Both buffers must have the same size.
+     */
+    public void mergeDirtyFrom(LEDBuffer other)
+    {
+        for (int i = other.nextDirty(0); i >= 0; i = other.nextDirty(i + 1))
+        {
+            long token = other.takeToken(i);
+            if (colors_[i] != other.colors_[i])
+            {
+                colors_[i] = other.colors_[i];
+                if (!markDirty(i))
+                    coalescedCount_++;
+                stamp(i, token);
+            }
+        }
+    }
+
     public int getWidth() { return width_; }
     public int getHeight() { return height_; }
 
-    private Color[][] buffer_;
-    private boolean[][] dirty_;
-    private boolean globalDirty_;
-    private int width_;
-    private int height_;
+    /**
+     * makes the buffer remember which input caused a cell to change (see LatencyTracker)
+     * @param latency the tracker, null to stop measuring
+     */
+    public void setLatencyTracker(LatencyTracker latency)
+    {
+        latency_ = latency;
+        tokens_ = (latency != null) ? new long[size_] : null;
+    }
+
+    /**
+     * @return the token of the input that changed a cell, 0 if there is none. The cell's token is cleared.
+     */
+    public long takeToken(int index)
+    {
+        if (tokens_ == null)
+            return 0;
+        long token = tokens_[index];
+        tokens_[index] = 0;
+        return token;
+    }
+
+    /** keeps the token of the earliest input that changed a cell since it was last sent */
+    private void stamp(int index, long token)
+    {
+        if ((tokens_ != null) && (token != 0) && (tokens_[index] == 0))
+            tokens_[index] = token;
+    }
+
+    /**
+     * @return false if the cell was dirty already
+     */
+    private boolean markDirty(int index)
+    {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if ((dirty_[w] & bit) == 0)
+        {
+            dirty_[w] |= bit;
+            dirtyCount_++;
+            return true;
+        }
+        return false;
+    }
+
+    private final byte[] colors_;
+    private final long[] dirty_;
+    private int dirtyCount_;
+    private long coalescedCount_;
+    private LatencyTracker latency_; // null unless latency is measured
+    private long[] tokens_;          // per cell: token of the input that changed it (see LatencyTracker)
+    private final int width_;
+    private final int height_;
+    private final int size_;
 }
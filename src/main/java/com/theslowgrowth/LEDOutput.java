@@ -0,0 +1,169 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.controller.api.MidiOut;
+
+import java.util.Arrays;
+
+/**
+ * Sends the dirty cells of an LEDBuffer to the LinnStrument.
+ * Every LED costs up to three CC messages (column, row, colour), so the number of bytes sent
+ * per flush is limited by a budget. Cells go out in order of their column's priority;
+ * whatever doesn't fit stays dirty in the buffer and is sent with one of the next flushes.
+ * A shadow of what the hardware currently shows is kept, so cells that are flagged dirty but
+ * already show the right colour cost nothing.
+ */
+public class LEDOutput
+{
+    public static final int PRIORITY_CONTROL = 0;
+    public static final int PRIORITY_NAVIGATION = 1;
+    public static final int PRIORITY_CONTENT = 2;
+
+    LEDOutput(MidiOut out, int width, int height)
+    {
+        out_ = out;
+        height_ = height;
+        masks_ = new long[NUM_PRIORITIES][(width * height + 63) >>> 6];
+        shown_ = new byte[width * height]; // LEDs are all off when user firmware mode is entered
+        for (int x = 0; x < width; x++)
+            setColumnPriority(x, PRIORITY_CONTENT);
+        budget_ = 0;
+    }
+
+    public void setColumnPriority(int x, int priority)
+    {
+        for (int y = 0; y < height_; y++)
+        {
+            int i = x * height_ + y;
+            for (int p = 0; p < NUM_PRIORITIES; p++)
+                masks_[p][i >>> 6] &= ~(1L << i);
+            masks_[priority][i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * @param bytesPerFlush maximum number of MIDI bytes sent per flush, 0 for no limit
+     */
+    public void setBudget(int bytesPerFlush)
+    {
+        budget_ = bytesPerFlush;
+    }
+
+    /**
+     * sends dirty cells of buffer until the budget is used up
+     * @return true, if cells were left over for the next flush
+     */
+    public boolean send(LEDBuffer buffer)
+    {
+        return send(buffer, budget_);
+    }
+
+    /**
+     * sends all dirty cells of buffer, ignoring the budget
+     */
+    public void sendAll(LEDBuffer buffer)
+    {
+        send(buffer, 0);
+    }
+
+    /**
+     * forgets what the hardware shows, so that every cell is sent again the next time it is flagged dirty
+     */
+    public void invalidate()
+    {
+        Arrays.fill(shown_, UNKNOWN);
+    }
+
+    /**
+     * @return number of dirty cells that were not sent because the hardware already showed their colour
+     */
+    public long getSuppressedCount()
+    {
+        return suppressedCount_;
+    }
+
+    /**
+     * @return number of cells that had to wait for a later flush (counted once per flush)
+     */
+    public long getDeferredCount()
+    {
+        return deferredCount_;
+    }
+
+    public long getSentCCCount()
+    {
+        return sentCCCount_;
+    }
+
+    /**
+     * @param latency records the delay of every cell sent that was changed by an input, null to stop measuring
+     */
+    public void setLatencyTracker(LatencyTracker latency)
+    {
+        latency_ = latency;
+    }
+
+    private boolean send(LEDBuffer buffer, int budget)
+    {
+        if (!buffer.isDirty())
+            return false;
+
+        int spent = 0;
+        int lastX = -1;
+        long now = (latency_ != null) ? System.nanoTime() : 0;
+        for (int p = 0; p < NUM_PRIORITIES; p++)
+        {
+            long[] mask = masks_[p];
+            for (int i = buffer.nextDirty(0, mask); i >= 0; i = buffer.nextDirty(i + 1, mask))
+            {
+                int value = buffer.getValue(i);
+                if (shown_[i] == value)
+                {
+                    buffer.clearDirty(i);
+                    buffer.takeToken(i);
+                    suppressedCount_++;
+                    continue;
+                }
+                int x = buffer.indexX(i);
+                int cost = (x == lastX) ? 2 * CC_BYTES : 3 * CC_BYTES;
+                if ((budget > 0) && (spent + cost > budget))
+                {
+                    deferredCount_ += buffer.getDirtyCount();
+                    return true;
+                }
+                if (x != lastX)
+                {
+                    lastX = x;
+                    sendCC(20, x & 0x7F);
+                }
+                sendCC(21, (7 - buffer.indexY(i)) & 0x7F);
+                sendCC(22, value);
+                shown_[i] = (byte) value;
+                buffer.clearDirty(i);
+                if (latency_ != null)
+                    latency_.cellSent(buffer.takeToken(i), now);
+                spent += cost;
+            }
+        }
+        return false;
+    }
+
+    private void sendCC(int CC, int value)
+    {
+        out_.sendMidi(0xB0, CC, value);
+        sentCCCount_++;
+    }
+
+    private final MidiOut out_;
+    private final int height_;
+    private final long[][] masks_; // one cell bitset per priority
+    private final byte[] shown_; // colour codes the hardware currently shows
+    private int budget_;
+    private long deferredCount_;
+    private long sentCCCount_;
+    private long suppressedCount_;
+    private LatencyTracker latency_; // null unless latency is measured
+
+    private static final int NUM_PRIORITIES = 3;
+    private static final int CC_BYTES = 3;
+    private static final byte UNKNOWN = -1;
+}
@@ -0,0 +1,131 @@
+package com.theslowgrowth;
+
+/**
+ * Maps colours to the nearest LinnStrument colour by their distance in CIELAB space (delta E 1976),
+ * which follows perceived differences much better than hue thresholds, also for pale colours.
+ * LEDs only shine at full brightness, so colours are brightened to full scale before they are compared;
+ * like with the hue mapping, almost black colours become BLACK.
+ * The runner-up is offered as the alternative colour.
+ * Evaluating this is slow, use {@link #lut()} or wrap it into a {@link ColorLUT}.
+ */
+public class LabColorMapping implements ColorMapping
+{
+    /**
+     * @param colors the colours to choose from
+     * @param rgb    r, g, b (0..1) of every colour as it appears on the hardware, 3 values per colour
+     */
+    public LabColorMapping(Color[] colors, float[] rgb)
+    {
+        if ((colors.length < 2) || (rgb.length != colors.length * 3))
+            throw new IllegalArgumentException("Need at least two colours and three values per colour");
+        colors_ = colors.clone();
+        lab_ = new float[colors.length * 3];
+        for (int i = 0; i < colors.length; i++)
+            toLab(rgb[i * 3], rgb[i * 3 + 1], rgb[i * 3 + 2], lab_, i * 3);
+    }
+
+    /**
+     * @return the default palette quantized into a table, built on first use
+     */
+    public static synchronized ColorLUT lut()
+    {
+        if (lut_ == null)
+            lut_ = new ColorLUT(new LabColorMapping(PALETTE, PALETTERGB));
+        return lut_;
+    }
+
+    @Override
+    public Color map(float r, float g, float b)
+    {
+        if (Math.max(r, Math.max(g, b)) < DARK)
+            return Color.BLACK;
+        return colors_[nearest(r, g, b, -1)];
+    }
+
+    @Override
+    public Color alternative(float r, float g, float b)
+    {
+        if (Math.max(r, Math.max(g, b)) < DARK)
+            return Color.BLACK;
+        return colors_[nearest(r, g, b, nearest(r, g, b, -1))];
+    }
+
+    /**
+     * @param skip index of a colour that must not be chosen, -1 for none
+     * @return index of the nearest colour
+     */
+    private int nearest(float r, float g, float b, int skip)
+    {
+        float scale = 1 / Math.max(r, Math.max(g, b));
+        float[] lab = scratch_;
+        toLab(r * scale, g * scale, b * scale, lab, 0);
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < colors_.length; i++)
+        {
+            if (i == skip)
+                continue;
+            float dl = lab[0] - lab_[i * 3];
+            float da = lab[1] - lab_[i * 3 + 1];
+            float db = lab[2] - lab_[i * 3 + 2];
+            float distance = dl * dl + da * da + db * db;
+            if (distance < bestDistance)
+            {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * sRGB to CIELAB, D65 white point
+     */
+    private static void toLab(float r, float g, float b, float[] out, int offset)
+    {
+        double lr = linear(r), lg = linear(g), lb = linear(b);
+        double x = (0.4124 * lr + 0.3576 * lg + 0.1805 * lb) / 0.95047;
+        double y = (0.2126 * lr + 0.7152 * lg + 0.0722 * lb);
+        double z = (0.0193 * lr + 0.1192 * lg + 0.9505 * lb) / 1.08883;
+        double fx = f(x), fy = f(y), fz = f(z);
+        out[offset] = (float) (116 * fy - 16);
+        out[offset + 1] = (float) (500 * (fx - fy));
+        out[offset + 2] = (float) (200 * (fy - fz));
+    }
+
+    private static double linear(float c)
+    {
+        double v = Math.max(0, Math.min(1, c));
+        return (v <= 0.04045) ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static double f(double t)
+    {
+        return (t > 216.0 / 24389.0) ? Math.cbrt(t) : (t * 24389.0 / 27.0 + 16) / 116;
+    }
+
+    private final Color[] colors_;
+    private final float[] lab_;
+    private final float[] scratch_ = new float[3];
+
+    private static ColorLUT lut_;
+
+    private static final float DARK = 0.1f;
+
+    // every colour LinnStrument can light up, with approximately how it looks
+    private static final Color[] PALETTE = {
+            Color.RED, Color.YELLOW, Color.GREEN, Color.CYAN, Color.BLUE, Color.MAGENTA,
+            Color.WHITE, Color.ORANGE, Color.LIME, Color.PINK };
+    private static final float[] PALETTERGB = {
+            1, 0, 0,         // RED
+            1, 1, 0,         // YELLOW
+            0, 1, 0,         // GREEN
+            0, 1, 1,         // CYAN
+            0, 0, 1,         // BLUE
+            1, 0, 1,         // MAGENTA
+            1, 1, 1,         // WHITE
+            1, 0.5f, 0,      // ORANGE
+            0.55f, 1, 0,     // LIME
+            1, 0.45f, 0.7f   // PINK
+    };
+}
@@ -0,0 +1,89 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+
+/**
+ * Measures the time from a button press arriving to the LED changes it caused leaving for the LinnStrument.
+ * A button press or release stamps a token (its System.nanoTime()), which is current while its handler runs.
+ * LEDBuffer keeps the token of every cell that changes while it is current, merging carries it over to
+ * the hardware buffer, and LEDOutput records the delay when the cell is sent. Changes made outside the handler,
+ * e.g. by timers or by bitwig's observers reacting to the press, are not attributed to it.
+ * Delays are counted per page in a Histogram.
+ */
+class LatencyTracker
+{
+    LatencyTracker(ControllerHost host, String[] pageNames)
+    {
+        host_ = host;
+        names_ = pageNames;
+        histograms_ = new Histogram[pageNames.length];
+        for (int p = 0; p < pageNames.length; p++)
+            histograms_[p] = new Histogram();
+    }
+
+    /**
+     * @param page index into the page names, latencies are recorded for it from now on
+     */
+    void setPage(int page)
+    {
+        page_ = page;
+    }
+
+    /** a button event from the LinnStrument has arrived, LED changes from now on are caused by it */
+    void inputReceived()
+    {
+        token_ = System.nanoTime();
+    }
+
+    /** the handler of the button event is done, later LED changes aren't caused by it */
+    void inputHandled()
+    {
+        token_ = 0;
+    }
+
+    /**
+     * @return the token of the input currently being handled, 0 if there is none
+     */
+    long getToken()
+    {
+        return token_;
+    }
+
+    /**
+     * records the delay of a cell that is being sent
+     * @param token the cell's token, 0 if the cell wasn't changed by an input
+     * @param now System.nanoTime() of the send
+     */
+    void cellSent(long token, long now)
+    {
+        if (token != 0)
+            histograms_[page_].record((now - token) / 1000);
+    }
+
+    /**
+     * prints p50/p95/p99 of every page that saw input to the console and starts over
+     */
+    void report()
+    {
+        boolean any = false;
+        for (int p = 0; p < histograms_.length; p++)
+        {
+            Histogram h = histograms_[p];
+            if (h.count() == 0)
+                continue;
+            any = true;
+            host_.println(String.format("Input to LED latency, %s: %d LEDs, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms",
+                    names_[p], h.count(), h.percentile(0.5) / 1000.0, h.percentile(0.95) / 1000.0,
+                    h.percentile(0.99) / 1000.0));
+            h.reset();
+        }
+        if (!any)
+            host_.println("Input to LED latency: nothing measured yet");
+    }
+
+    private final ControllerHost host_;
+    private final String[] names_;
+    private final Histogram[] histograms_;
+    private int page_;
+    private long token_;
+}
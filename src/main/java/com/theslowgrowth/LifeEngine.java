@@ -0,0 +1,264 @@
+package com.theslowgrowth;
+
+import java.util.Arrays;
+
+/**
+ * Game of Life on a small toroidal board of up to 64 columns. Every row is packed into a long
+ * (bit x = column x), neighbour counts are summed for a whole row at once with bitwise adders,
+ * the rule turns them into the next generation, which is written into a second set of rows that is
+ * swapped in afterwards.
+ * Nothing is allocated per generation.
+ */
+class LifeEngine implements LifeUniverse
+{
+    LifeEngine(int width, int height)
+    {
+        width_ = width;
+        height_ = height;
+        mask_ = (width == 64) ? -1L : (1L << width) - 1;
+        rows_ = new long[height];
+        next_ = new long[height];
+        changed_ = new long[height];
+        fading_ = new long[height];
+        tracked_ = new long[height];
+        dying_ = new long[height];
+        count0_ = new long[height];
+        count1_ = new long[height];
+        count2_ = new long[height];
+        count3_ = new long[height];
+        age_ = new byte[width * height];
+        fadeHorizon_ = 0;
+        setRule(LifeRule.CONWAY);
+        clear();
+    }
+
+    @Override public int getWidth() { return width_; }
+    @Override public int getHeight() { return height_; }
+
+    @Override
+    public boolean isAlive(int x, int y)
+    {
+        return (rows_[y] & (1L << x)) != 0;
+    }
+
+    @Override
+    public void setAlive(int x, int y, boolean alive)
+    {
+        hash_ ^= LifeUniverse.hashWord(rows_[y], y) ^ dyingHash(y, dying_[y]);
+        if (alive)
+            rows_[y] |= 1L << x;
+        else
+            rows_[y] &= ~(1L << x);
+        tracked_[y] &= ~(1L << x);
+        dying_[y] &= ~(1L << x);
+        hash_ ^= LifeUniverse.hashWord(rows_[y], y) ^ dyingHash(y, dying_[y]);
+        age_[y * width_ + x] = (byte) (alive ? 0 : DEAD);
+    }
+
+    @Override
+    public int getAge(int x, int y)
+    {
+        return age_[y * width_ + x];
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(rows_, 0);
+        Arrays.fill(changed_, 0);
+        Arrays.fill(fading_, 0);
+        Arrays.fill(tracked_, 0);
+        Arrays.fill(dying_, 0);
+        Arrays.fill(age_, (byte) DEAD);
+        hash_ = 0;
+    }
+
+    @Override
+    public void setFadeHorizon(int ticks)
+    {
+        fadeHorizon_ = Math.min(ticks, DEAD - 1);
+        trackHorizon_ = Math.max(fadeHorizon_, decay_);
+    }
+
+    @Override
+    public void setRule(LifeRule rule)
+    {
+        rule_ = rule;
+        decay_ = rule.getDecayStates();
+        trackHorizon_ = Math.max(fadeHorizon_, decay_);
+    }
+
+    @Override
+    public long getChangedBits(int x, int y, int count)
+    {
+        return window(changed_[y], x, count);
+    }
+
+    @Override
+    public long getFadingBits(int x, int y, int count)
+    {
+        return window(fading_[y], x, count);
+    }
+
+    @Override
+    public long getLastStepCells()
+    {
+        return (long) width_ * height_;
+    }
+
+    @Override
+    public long getHash()
+    {
+        return hash_;
+    }
+
+    @Override
+    public int getLastNeighborCount(int x, int y)
+    {
+        return (int) (((count0_[y] >>> x) & 1)
+                | (((count1_[y] >>> x) & 1) << 1)
+                | (((count2_[y] >>> x) & 1) << 2)
+                | (((count3_[y] >>> x) & 1) << 3));
+    }
+
+    @Override
+    public void step()
+    {
+        for (int y = 0; y < height_; y++)
+        {
+            long up = rows_[(y + height_ - 1) % height_];
+            long mid = rows_[y];
+            long down = rows_[(y + 1) % height_];
+            countNeighbors(y, up, mid, down);
+
+            next_[y] = rule_.nextRow(mid, dying_[y], count0_[y], count1_[y], count2_[y], count3_[y]) & mask_;
+            changed_[y] = next_[y] ^ mid;
+            if (changed_[y] != 0)
+                hash_ ^= LifeUniverse.hashWord(mid, y) ^ LifeUniverse.hashWord(next_[y], y);
+        }
+        updateAges();
+
+        long[] tmp = rows_;
+        rows_ = next_;
+        next_ = tmp;
+    }
+
+    private void countNeighbors(int y, long up, long mid, long down)
+    {
+        long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        long[] in = inputs_;
+        in[0] = west(up);
+        in[1] = up;
+        in[2] = east(up);
+        in[3] = west(mid);
+        in[4] = east(mid);
+        in[5] = west(down);
+        in[6] = down;
+        in[7] = east(down);
+        // ripple-carry add of eight one bit planes into a four bit count per column
+        for (int i = 0; i < 8; i++)
+        {
+            long x = in[i];
+            long carry0 = c0 & x;
+            c0 ^= x;
+            long carry1 = c1 & carry0;
+            c1 ^= carry0;
+            long carry2 = c2 & carry1;
+            c2 ^= carry1;
+            c3 |= carry2;
+        }
+        count0_[y] = c0;
+        count1_[y] = c1;
+        count2_[y] = c2;
+        count3_[y] = c3;
+    }
+
+    private void updateAges()
+    {
+        for (int y = 0; y < height_; y++)
+        {
+            long alive = next_[y];
+            long changed = changed_[y];
+            int base = y * width_;
+            hash_ ^= dyingHash(y, dying_[y]); // read before the ages move on
+            // only born cells and cells that died recently need a new age
+            for (long born = changed & alive; born != 0; born &= born - 1)
+                age_[base + Long.numberOfTrailingZeros(born)] = 0;
+            long aging = (tracked_[y] | changed) & ~alive;
+            long tracked = 0, fading = 0, dying = 0;
+            for (; aging != 0; aging &= aging - 1)
+            {
+                int x = Long.numberOfTrailingZeros(aging);
+                long bit = 1L << x;
+                int age = age_[base + x] + 1;
+                if (age <= trackHorizon_)
+                {
+                    tracked |= bit;
+                    if (age <= fadeHorizon_)
+                        fading |= bit;
+                    if (age <= decay_)
+                        dying |= bit;
+                    age_[base + x] = (byte) age;
+                }
+                else
+                    age_[base + x] = (byte) DEAD;
+            }
+            tracked_[y] = tracked;
+            fading_[y] = fading;
+            dying_[y] = dying;
+            hash_ ^= dyingHash(y, dying);
+        }
+    }
+
+    /**
+     * hash contribution of the dying cells of a row. Dying cells block births, and when they stop blocking
+     * depends on their stage, so both go into the hash, under keys apart from those of the living rows.
+     */
+    private long dyingHash(int y, long dying)
+    {
+        long stages = 0;
+        for (long d = dying; d != 0; d &= d - 1)
+            stages = (stages ^ age_[y * width_ + Long.numberOfTrailingZeros(d)]) * 0x9E3779B97F4A7C15L;
+        return LifeUniverse.hashWord(dying ^ stages, height_ + y);
+    }
+
+    /** rotates column x down to bit 0 and keeps count columns */
+    private long window(long row, int x, int count)
+    {
+        long rotated = (x == 0) ? row : ((row >>> x) | (row << (width_ - x))) & mask_;
+        return (count >= 64) ? rotated : rotated & ((1L << count) - 1);
+    }
+
+    /** every column gets the value of its western neighbour, wrapping around */
+    private long west(long row)
+    {
+        return ((row << 1) | (row >>> (width_ - 1))) & mask_;
+    }
+
+    /** every column gets the value of its eastern neighbour, wrapping around */
+    private long east(long row)
+    {
+        return ((row >>> 1) | (row << (width_ - 1))) & mask_;
+    }
+
+    private final int width_;
+    private final int height_;
+    private final long mask_;
+    private long[] rows_;
+    private long[] next_;
+    private final long[] changed_;
+    private final long[] fading_;
+    private final long[] tracked_; // dead cells whose age is still counted
+    private final long[] dying_;   // cells in one of the rule's dying states
+    private final long[] count0_; // bit planes of the neighbour count of the last step
+    private final long[] count1_;
+    private final long[] count2_;
+    private final long[] count3_;
+    private final long[] inputs_ = new long[8];
+    private final byte[] age_;
+    private int fadeHorizon_;
+    private int trackHorizon_;
+    private int decay_;
+    private LifeRule rule_;
+    private long hash_;
+}
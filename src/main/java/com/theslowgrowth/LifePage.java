@@ -3,9 +3,7 @@ package com.theslowgrowth;
 
 import static com.theslowgrowth.Color.*;
 
-import com.bitwig.extension.controller.api.MidiOut;
-import com.bitwig.extension.controller.api.Transport;
-
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -15,20 +13,45 @@ public class LifePage extends LinnstrumentPage {
     // 0,0 - Start / Stop
     // 0,1 - Short Press Clear Cells, Long Press Clear Beacons
     // 0,2 - Tempo Sync Mode, toggles between DAW SYNC variations or 100ms
-    // 0,3 - Display Mode, toggles between B/W, Warm, Cool, Magenta
+    // 0,3 - Short Press Display Mode, toggles between B/W, Warm, Cool, Magenta. Long Press next rule (Life, HighLife, ...)
     // 0,4 - Change Extension App (Clip launcher etc)
     // 0,5 - Exit back to LinnStrument
-    // 0,6 - Auto-Seed, toggles between ON/OFF and sets the number of ticks between reseeding
+    // 0,6 - Auto-Seed, toggles between ON/OFF and sets the number of ticks between reseeding, or reseeds when the board stagnates
+    // 0,7 - Hold and press a cell to centre the view on it, tap to go back to the origin
 
     private static final int WIDTH  = 26;
     private static final int HEIGHT = 8;
-    private final boolean[][] alive = new boolean[WIDTH][HEIGHT];
-    private final int[][] ageSinceDeath = new int[WIDTH][HEIGHT];
-    private final int[][] beaconNote = new int[WIDTH][HEIGHT]; // -1 = no beacon
+    private static final int VIEW_WIDTH = WIDTH - 1; // the universe is shown in columns 1..WIDTH-1
+    private static final int VIEW_CENTER_X = 1 + VIEW_WIDTH / 2;
+    private static final int FADE_TICKS = 9; // dead cells change colour until this age (see colorForCell)
+    private LifeUniverse universe_ = new LifeEngine(VIEW_WIDTH, HEIGHT);
+    private static final String[] RULE_PRESETS = {"B3/S23", "B36/S23", "B3678/S34678", "B2/S", "B3/S012345678", "/2/3", "345/2/4"};
+    private static final String[] RULE_NAMES = {"Life", "HighLife", "Day & Night", "Seeds", "Life without Death", "Brian's Brain", "Star Wars"};
+    private LifeRule rule_ = LifeRule.CONWAY;
+    private int viewX_ = 0; // universe coordinates of the cell shown at (1, 0)
+    private int viewY_ = 0;
+    private boolean scrollHeld_ = false;
+    private boolean scrolled_ = false;
+    // beacons in universe coordinates, ordered by x, then y
+    private int[] beaconX_ = new int[16];
+    private int[] beaconY_ = new int[16];
+    private int[] beaconNote_ = new int[16];
+    private int beaconCount_ = 0;
+    private final long[] viewBeacons_ = new long[HEIGHT]; // beacons inside the view, bit x-1 of row y
     private boolean running = true;
     private int autoSeedAfterTicks = 0; // 0 = off, otherwise number of ticks until reseed
     private int ticksUntilReseed = 0;
-    private static final int[] AUTO_SEED_OPTIONS = {4, 8, 16, 32, 64, 128, 256, 1024};
+    // never counts down far enough to reseed, the board is reseeded when it stagnates instead
+    private static final int AUTO_SEED_ON_STAGNATION = Integer.MAX_VALUE;
+    private static final int[] AUTO_SEED_OPTIONS = {4, 8, 16, 32, 64, 128, 256, 1024, AUTO_SEED_ON_STAGNATION};
+    // hashes of the last generations, a repeated hash means a still life or a cycle of up to HASH_RING_SIZE
+    private static final int HASH_RING_SIZE = 16;
+    private static final int STAGNATION_GRACE_TICKS = 4; // let a detected cycle play a little before reseeding
+    private final long[] recentHashes_ = new long[HASH_RING_SIZE];
+    private int recentHashCount_ = 0;
+    private int recentHashIndex_ = 0;
+    private int stagnantTicks_ = 0; // ticks since the board was found repeating, 0 = still evolving
+    private int lastPeriod_ = 0;
     private int displayMode = 1; // 0=BW, 1=Warm, 2=Cool, 3=Magenta
     private static final int TEMPO_OFF   = 0;
     private static final int TEMPO_1_32  = 1;
@@ -36,11 +59,10 @@ public class LifePage extends LinnstrumentPage {
     private static final int TEMPO_1_8   = 3;
     private static final int TEMPO_1_4   = 4;
     private static final int TEMPO_1_2   = 5;
+    private static final double[] TEMPO_BEATS = {0, 0.125, 0.25, 0.5, 1.0, 2.0};
     private int tempoSyncMode = TEMPO_OFF;
-    private final TaskTimer taskTimer_;
-    private TaskTimer.TimedTask lifeTask_;
-    private final Transport transport;
-    private final MidiOut midiOut;
+    private final TransportScheduler.Task[] lifeTasks_ = new TransportScheduler.Task[TEMPO_BEATS.length];
+    private TransportScheduler.Task lifeTask_;
     private final Random random = new Random();
     private int nextMidiNote = 60;
     private int lastNonZeroAutoSeed = 16;
@@ -49,17 +71,14 @@ public class LifePage extends LinnstrumentPage {
 
     LifePage(int width, int height, LinnstrumentClipLauncherExtension parent) {
         super(width, height, parent);
+        universe_.setFadeHorizon(fadeHorizon());
         clearCellsOnly();
-        this.transport = parent.getTransport();
-        this.midiOut = parent.getQwertyOut();
-        taskTimer_ = new TaskTimer(parent, transport);
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                beaconNote[x][y] = -1;
-            }
+        TransportScheduler scheduler = parent.getScheduler();
+        lifeTasks_[TEMPO_OFF] = scheduler.createMillisTask(this::tick, 100, MetricsRegistry.TASK_LIFE);
+        for (int mode = TEMPO_1_32; mode < TEMPO_BEATS.length; mode++) {
+            lifeTasks_[mode] = scheduler.createBeatTask(this::tick, TEMPO_BEATS[mode], MetricsRegistry.TASK_LIFE);
         }
         running = true;
-        startSimulation();
     }
 
     @Override
@@ -67,23 +86,22 @@ public class LifePage extends LinnstrumentPage {
         getParent().getHost().showPopupNotification("LinnStrument Life + MIDI Beacons");
         redrawEverything();
         updateUIButtons();
-        taskTimer_.setActive(true);
         startSimulation();
     }
 
     @Override
     protected void hideImpl() {
         running = false;
+        scrollHeld_ = false;
         if (lifeTask_ != null) {
-            taskTimer_.removeTask(lifeTask_);
+            getParent().getScheduler().stop(lifeTask_);
             lifeTask_ = null;
         }
         for (Runnable task : pendingLongPressTask.values()) {
-            getParent().getHost().scheduleTask(task, -1);
+            getParent().scheduleTask(task, -1, MetricsRegistry.SCHEDULE_LIFE);
         }
         pendingLongPressTask.clear();
         pressStartTime.clear();
-        taskTimer_.setActive(false);
     }
 
     public void buttonDown(int x, int y, int velocity) {
@@ -92,10 +110,12 @@ public class LifePage extends LinnstrumentPage {
             handleControlColumn(y);
             return;
         }
+        if (scrollHeld_) {
+            scrollTo(x, y);
+            return;
+        }
         if (running) {
-            alive[x][y] = !alive[x][y];
-            ageSinceDeath[x][y] = alive[x][y] ? 0 : 999;
-            setLED(x, y, colorForCell(x, y));
+            toggleCell(x, y);
             return;
         }
         int key = x * 100 + y;
@@ -113,11 +133,33 @@ public class LifePage extends LinnstrumentPage {
             }
         };
         pendingLongPressTask.put(key, longPressRunnable);
-        getParent().getHost().scheduleTask(longPressRunnable, 1000);
+        getParent().scheduleTask(longPressRunnable, 1000, MetricsRegistry.SCHEDULE_LIFE);
     }
 
     @Override
     public void buttonUp(int x, int y) {
+        if (x == 0 && y == 7) {
+            scrollHeld_ = false;
+            if (!scrolled_ && (viewX_ != 0 || viewY_ != 0)) {
+                viewX_ = 0;
+                viewY_ = 0;
+                updateViewBeacons();
+                redrawEverything();
+                getParent().getHost().showPopupNotification("Life View: Origin");
+            }
+            updateUIButtons();
+            return;
+        }
+        if (x == 0 && y == 3) {
+            cancelPendingLongPress(x * 100 + y);
+            Long start = pressStartTime.remove(x * 100 + y);
+            if (start != null && System.currentTimeMillis() - start < 1000) {
+                displayMode = (displayMode + 1) % 4;
+                redrawEverything();
+                updateUIButtons();
+            }
+            return;
+        }
         if (x == 0 && y == 6) {
             cancelPendingLongPress(x * 100 + y);
             Long start = pressStartTime.get(x * 100 + y);
@@ -126,7 +168,7 @@ public class LifePage extends LinnstrumentPage {
             if (duration < 1000) {
                 if (autoSeedAfterTicks == 0) {
                     autoSeedAfterTicks = lastNonZeroAutoSeed;
-                    getParent().getHost().showPopupNotification("Auto-Seed: ON (" + autoSeedAfterTicks + " ticks)");
+                    getParent().getHost().showPopupNotification("Auto-Seed: ON (" + autoSeedLabel(autoSeedAfterTicks) + ")");
                 } else {
                     int currentIndex = 0;
                     for (int i = 0; i < AUTO_SEED_OPTIONS.length; i++) {
@@ -139,7 +181,7 @@ public class LifePage extends LinnstrumentPage {
                     int nextValue = AUTO_SEED_OPTIONS[nextIndex];
                     autoSeedAfterTicks = nextValue;
                     lastNonZeroAutoSeed = nextValue;
-                    getParent().getHost().showPopupNotification("Auto-Seed: " + nextValue + " ticks");
+                    getParent().getHost().showPopupNotification("Auto-Seed: " + autoSeedLabel(nextValue));
                 }
                 if (running) {
                     ticksUntilReseed = autoSeedAfterTicks;
@@ -160,14 +202,7 @@ public class LifePage extends LinnstrumentPage {
         long duration = System.currentTimeMillis() - start;
         if (duration < 1000) {
             cancelPendingLongPress(key);
-            if (beaconNote[x][y] == -1) {
-                alive[x][y] = !alive[x][y];
-                ageSinceDeath[x][y] = alive[x][y] ? 0 : 999;
-            } else {
-                alive[x][y] = !alive[x][y];
-                ageSinceDeath[x][y] = alive[x][y] ? 0 : 999;
-            }
-            setLED(x, y, colorForCell(x, y));
+            toggleCell(x, y);
         }
         pressStartTime.remove(key);
     }
@@ -175,24 +210,27 @@ public class LifePage extends LinnstrumentPage {
     private void handleLongPress(int x, int y) {
         if (running) return;
 
-        if (beaconNote[x][y] != -1) {
-            beaconNote[x][y] = -1;
-            alive[x][y] = false;
-            ageSinceDeath[x][y] = 999;
-            getParent().getHost().showPopupNotification("Beacon Removed (Note " + (nextMidiNote - 1) + ")");
+        int ux = universeX(x);
+        int uy = universeY(y);
+        int beacon = findBeacon(ux, uy);
+        if (beacon != -1) {
+            int note = beaconNote_[beacon];
+            removeBeacon(beacon);
+            universe_.setAlive(ux, uy, false);
+            getParent().getHost().showPopupNotification("Beacon Removed (Note " + note + ")");
         } else {
-            beaconNote[x][y] = nextMidiNote++;
-            alive[x][y] = false;
-            ageSinceDeath[x][y] = 999;
+            addBeacon(ux, uy, nextMidiNote++);
+            universe_.setAlive(ux, uy, false);
             getParent().getHost().showPopupNotification("Beacon Created! MIDI Note " + (nextMidiNote - 1));
         }
+        updateViewBeacons();
         setLED(x, y, colorForCell(x, y));
     }
 
     private void cancelPendingLongPress(int key) {
         Runnable task = pendingLongPressTask.get(key);
         if (task != null) {
-            getParent().getHost().scheduleTask(task, -1);
+            getParent().scheduleTask(task, -1, MetricsRegistry.SCHEDULE_LIFE);
             pendingLongPressTask.remove(key);
         }
     }
@@ -207,7 +245,7 @@ public class LifePage extends LinnstrumentPage {
                 redrawEverything();
             } else {
                 if (lifeTask_ != null) {
-                    taskTimer_.removeTask(lifeTask_);
+                    getParent().getScheduler().stop(lifeTask_);
                     lifeTask_ = null;
                 }
                 redrawEverything();
@@ -228,7 +266,7 @@ public class LifePage extends LinnstrumentPage {
                 pendingLongPressTask.remove(key);
             };
             pendingLongPressTask.put(key, longPressRunnable);
-            getParent().getHost().scheduleTask(longPressRunnable, 1000);
+            getParent().scheduleTask(longPressRunnable, 1000, MetricsRegistry.SCHEDULE_LIFE);
         } else if (y == 2) {
             tempoSyncMode = (tempoSyncMode + 1) % 6;
             String[] labels = {"Off (Fixed 100ms)", "1/32", "1/16", "1/8", "1/4", "1/2"};
@@ -236,8 +274,23 @@ public class LifePage extends LinnstrumentPage {
             if (running) startSimulation();
             updateUIButtons();
         } else if (y == 3) {
-            displayMode = (displayMode + 1) % 4;
-            redrawEverything();
+            int key = 0 * 100 + 3;
+            long now = System.currentTimeMillis();
+            pressStartTime.put(key, now);
+            Runnable longPressRunnable = () -> {
+                if (!pressStartTime.containsKey(key)) return;
+                long duration = System.currentTimeMillis() - pressStartTime.get(key);
+                if (duration >= 1000) {
+                    nextRulePreset();
+                    pressStartTime.remove(key);
+                }
+                pendingLongPressTask.remove(key);
+            };
+            pendingLongPressTask.put(key, longPressRunnable);
+            getParent().scheduleTask(longPressRunnable, 1000, MetricsRegistry.SCHEDULE_LIFE);
+        } else if (y == 7) {
+            scrollHeld_ = true;
+            scrolled_ = false;
             updateUIButtons();
         } else if (y == 6) {
             int key = 0 * 100 + 6;
@@ -255,7 +308,7 @@ public class LifePage extends LinnstrumentPage {
                     } else {
                         autoSeedAfterTicks = lastNonZeroAutoSeed;
                         if (running) ticksUntilReseed = autoSeedAfterTicks;
-                        getParent().getHost().showPopupNotification("Auto-Seed: ON (" + autoSeedAfterTicks + " ticks)");
+                        getParent().getHost().showPopupNotification("Auto-Seed: ON (" + autoSeedLabel(autoSeedAfterTicks) + ")");
                     }
                     updateUIButtons();
                     pressStartTime.remove(key);
@@ -264,7 +317,7 @@ public class LifePage extends LinnstrumentPage {
             };
 
             pendingLongPressTask.put(key, longPressRunnable);
-            getParent().getHost().scheduleTask(longPressRunnable, 1000);
+            getParent().scheduleTask(longPressRunnable, 1000, MetricsRegistry.SCHEDULE_LIFE);
         }
     }
 
@@ -273,32 +326,24 @@ public class LifePage extends LinnstrumentPage {
         setLED(0, 1, RED);
         setLED(0, 2, tempoSyncMode == TEMPO_OFF ? OFF : LIME);
         setLED(0, 3, displayMode == 0 ? OFF : (displayMode == 1 ? RED : displayMode == 2 ? BLUE : MAGENTA));
-        setLED(0, 6, autoSeedAfterTicks > 0 ? GREEN : OFF);
+        setLED(0, 6, autoSeedAfterTicks == AUTO_SEED_ON_STAGNATION ? CYAN : (autoSeedAfterTicks > 0 ? GREEN : OFF));
+        setLED(0, 7, scrollHeld_ ? WHITE : (universe_.getWidth() > VIEW_WIDTH ? BLUE : OFF));
     }
 
     private void clearCellsOnly() {
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                alive[x][y] = false;
-                ageSinceDeath[x][y] = 999;
-            }
-        }
+        universe_.clear();
         nextMidiNote = 60;
         redrawEverything();
         getParent().getHost().showPopupNotification("Life: All Cells Killed (Beacons preserved)");
     }
 
     private void clearBeacons() {
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                if (beaconNote[x][y] != -1) {
-                    sendNoteOff(x, y);
-                }
-                beaconNote[x][y] = -1;
-                alive[x][y] = false;
-                ageSinceDeath[x][y] = 999;
-            }
+        for (int i = 0; i < beaconCount_; i++) {
+            sendNoteOff(beaconNote_[i]);
         }
+        beaconCount_ = 0;
+        updateViewBeacons();
+        universe_.clear();
         nextMidiNote = 60;
         redrawEverything();
         getParent().getHost().showPopupNotification("All Beacons Removed");
@@ -306,33 +351,16 @@ public class LifePage extends LinnstrumentPage {
 
     private void startSimulation() {
         if (lifeTask_ != null) {
-            taskTimer_.removeTask(lifeTask_);
+            getParent().getScheduler().stop(lifeTask_);
             lifeTask_ = null;
         }
         if (autoSeedAfterTicks > 0) {
             ticksUntilReseed = autoSeedAfterTicks;
         }
-        if (tempoSyncMode == TEMPO_OFF) {
-            lifeTask_ = null;
-            getParent().getHost().scheduleTask(this::tick100ms, 100);
-        } else {
-            TaskTimer.BlinkSpeed speed = TaskTimer.BlinkSpeed._32ND;
-            switch (tempoSyncMode) {
-                case TEMPO_1_32: speed = TaskTimer.BlinkSpeed._32ND; break;
-                case TEMPO_1_16: speed = TaskTimer.BlinkSpeed._16TH; break;
-                case TEMPO_1_8:  speed = TaskTimer.BlinkSpeed._8TH;  break;
-                case TEMPO_1_4:  speed = TaskTimer.BlinkSpeed.QUARTER; break;
-                case TEMPO_1_2:  speed = TaskTimer.BlinkSpeed.HALF;   break;
-            }
-            lifeTask_ = new TaskTimer.TimedTask(this::tick, speed);
-            taskTimer_.addTask(lifeTask_);
-        }
-    }
-
-    private void tick100ms() {
-        if (!running || tempoSyncMode != TEMPO_OFF) return;
-        tick();
-        getParent().getHost().scheduleTask(this::tick100ms, 100);
+        if (!running) return;
+        // TEMPO_OFF runs every 100ms, all other modes on the transport's grid
+        lifeTask_ = lifeTasks_[tempoSyncMode];
+        getParent().getScheduler().start(lifeTask_);
     }
 
     private void seedRandom() {
@@ -340,8 +368,7 @@ public class LifePage extends LinnstrumentPage {
         for (int i = 0; i < count; i++) {
             int x = 1 + random.nextInt(WIDTH - 2);
             int y = random.nextInt(HEIGHT);
-            alive[x][y] = true;
-            ageSinceDeath[x][y] = 0;
+            universe_.setAlive(universeX(x), universeY(y), true);
         }
     }
 
@@ -349,87 +376,248 @@ public class LifePage extends LinnstrumentPage {
         if (!running) return;
         if (autoSeedAfterTicks > 0) {
             ticksUntilReseed--;
-            if (ticksUntilReseed <= 0) {
+            boolean stagnated = autoSeedAfterTicks == AUTO_SEED_ON_STAGNATION && stagnantTicks_ > STAGNATION_GRACE_TICKS;
+            if (ticksUntilReseed <= 0 || stagnated) {
                 seedRandom();
                 ticksUntilReseed = autoSeedAfterTicks;
+                resetStagnation();
             }
         }
-        boolean[][] nextGen = new boolean[WIDTH][HEIGHT];
-        int[][] nextAge = new int[WIDTH][HEIGHT];
-        for (int x = 1; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                int neighbors = countNeighbors(x, y);
-                boolean currentlyAlive = alive[x][y];
-                boolean willBeAlive;
-                if (currentlyAlive) {
-                    willBeAlive = (neighbors == 2 || neighbors == 3);
-                } else {
-                    willBeAlive = (neighbors == 3);
-                }
-                if (beaconNote[x][y] != -1) {
-                    if (!currentlyAlive && willBeAlive) {
-                        sendNoteOn(x, y, neighbors);
-                    } else if (currentlyAlive && !willBeAlive) {
-                        sendNoteOff(x, y);
-                    }
-                }
-                nextGen[x][y] = willBeAlive;
-                if (willBeAlive) {
-                    nextAge[x][y] = 0;
-                } else {
-                    int old = ageSinceDeath[x][y];
-                    nextAge[x][y] = (old >= 999) ? 999 : old + 1;
-                }
+        long start = System.nanoTime();
+        universe_.step();
+        recordStep(System.nanoTime() - start);
+        checkStagnation(universe_.getHash());
+
+        // beacons live in the universe, they play whether they are in view or not
+        for (int i = 0; i < beaconCount_; i++) {
+            int bx = beaconX_[i];
+            int by = beaconY_[i];
+            if (universe_.getChangedBits(bx, by, 1) == 0) continue;
+            if (universe_.isAlive(bx, by)) {
+                sendNoteOn(beaconNote_[i], universe_.getLastNeighborCount(bx, by));
+            } else {
+                sendNoteOff(beaconNote_[i]);
             }
         }
-        for (int x = 1; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                alive[x][y] = nextGen[x][y];
-                ageSinceDeath[x][y] = nextAge[x][y];
-                setLED(x, y, colorForCell(x, y));
+
+        // only cells that were born, died or are still fading out can change colour
+        for (int y = 0; y < HEIGHT; y++) {
+            int uy = universeY(y);
+            long touched = universe_.getChangedBits(viewX_, uy, VIEW_WIDTH) | universe_.getFadingBits(viewX_, uy, VIEW_WIDTH);
+            while (touched != 0) {
+                int cx = Long.numberOfTrailingZeros(touched);
+                touched &= touched - 1;
+                setLED(cx + 1, y, colorForCell(cx + 1, y));
             }
         }
     }
 
-    private void sendNoteOn(int x, int y, int neighbors) {
-        int note = beaconNote[x][y];
-        if (note == -1) return;
-        int velocity = 20 + (int)(neighbors * 13.375);
-        velocity = Math.min(127, Math.max(20, velocity));
-        midiOut.sendMidi(0x91, note, velocity);
+    /**
+     * compares the board's hash against the last HASH_RING_SIZE generations
+     */
+    private void checkStagnation(long hash) {
+        int period = 0;
+        for (int age = 1; age <= recentHashCount_; age++) {
+            if (recentHashes_[(recentHashIndex_ - age + HASH_RING_SIZE) % HASH_RING_SIZE] == hash) {
+                period = age;
+                break;
+            }
+        }
+        recentHashes_[recentHashIndex_] = hash;
+        recentHashIndex_ = (recentHashIndex_ + 1) % HASH_RING_SIZE;
+        recentHashCount_ = Math.min(recentHashCount_ + 1, HASH_RING_SIZE);
+
+        if (period == 0) {
+            stagnantTicks_ = 0;
+        } else {
+            stagnantTicks_++;
+            lastPeriod_ = period;
+        }
+    }
+
+    private void resetStagnation() {
+        recentHashCount_ = 0;
+        stagnantTicks_ = 0;
+    }
+
+    /**
+     * @return period of the cycle the board is in (1 = still life), 0 while it is still evolving
+     */
+    public int getStagnationPeriod() {
+        return stagnantTicks_ > 0 ? lastPeriod_ : 0;
+    }
+
+    private static String autoSeedLabel(int ticks) {
+        return ticks == AUTO_SEED_ON_STAGNATION ? "on stagnation" : ticks + " ticks";
+    }
+
+    private void recordStep(long nanos) {
+        MetricsRegistry metrics = getParent().getMetrics();
+        metrics.increment(MetricsRegistry.LIFE_GENERATIONS);
+        metrics.add(MetricsRegistry.LIFE_STEP_NANOS, nanos);
+        metrics.add(MetricsRegistry.LIFE_STEP_CELLS, universe_.getLastStepCells());
+    }
+
+    /**
+     * replaces the universe by an empty one. 0 means the size of the surface, otherwise a square
+     * of size x size cells (a multiple of 64). Beacons are removed.
+     */
+    public void setUniverseSize(int size) {
+        for (int i = 0; i < beaconCount_; i++) {
+            sendNoteOff(beaconNote_[i]);
+        }
+        beaconCount_ = 0;
+        nextMidiNote = 60;
+        universe_ = (size <= 0) ? new LifeEngine(VIEW_WIDTH, HEIGHT) : new TiledLifeUniverse(size, size);
+        universe_.setRule(rule_);
+        universe_.setFadeHorizon(fadeHorizon());
+        viewX_ = 0;
+        viewY_ = 0;
+        updateViewBeacons();
+        redrawEverything();
+        updateUIButtons();
+    }
+
+    /**
+     * sets the rule from a rule string like "B3/S23" or "/2/3". Invalid rules are reported and ignored.
+     */
+    public void setRule(String rule) {
+        try {
+            setRule(LifeRule.parse(rule));
+        } catch (IllegalArgumentException e) {
+            getParent().getHost().showPopupNotification("Life: " + e.getMessage());
+        }
+    }
+
+    private void setRule(LifeRule rule) {
+        rule_ = rule;
+        universe_.setRule(rule);
+        universe_.setFadeHorizon(fadeHorizon());
+        redrawEverything();
+    }
+
+    private void nextRulePreset() {
+        int next = 0;
+        for (int i = 0; i < RULE_PRESETS.length; i++) {
+            if (LifeRule.parse(RULE_PRESETS[i]).equals(rule_)) {
+                next = (i + 1) % RULE_PRESETS.length;
+                break;
+            }
+        }
+        setRule(LifeRule.parse(RULE_PRESETS[next]));
+        getParent().getHost().showPopupNotification("Life Rule: " + RULE_NAMES[next] + " (" + rule_ + ")");
+    }
+
+    /**
+     * plain rules fade dead cells over FADE_TICKS, Generations rules show their dying states instead.
+     * One more tick than is coloured, so the cell is redrawn when it goes dark.
+     */
+    private int fadeHorizon() {
+        return rule_.getDecayStates() > 0 ? rule_.getDecayStates() + 1 : FADE_TICKS;
     }
 
-    private void sendNoteOff(int x, int y) {
-        int note = beaconNote[x][y];
-        if (note == -1) return;
-        midiOut.sendMidi(0x81, note, 0);
+    /**
+     * maps the age of a dying cell onto the colour ramp (1..8) of the display modes
+     */
+    private int rampAge(int age) {
+        int decay = rule_.getDecayStates();
+        if (decay == 0) return age;
+        if (age > decay) return LifeUniverse.DEAD;
+        if (decay == 1) return 1;
+        return 1 + (age - 1) * 7 / (decay - 1);
     }
 
-    private int countNeighbors(int cx, int cy) {
-        int count = 0;
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                if (dx == 0 && dy == 0) continue;
-                int nx = cx + dx;
-                if (nx < 1) nx = WIDTH - 1;
-                else if (nx >= WIDTH) nx = 1;
-                int ny = (cy + dy + HEIGHT) % HEIGHT;
-                if (alive[nx][ny]) count++;
+    private void scrollTo(int x, int y) {
+        viewX_ = Math.floorMod(viewX_ + x - VIEW_CENTER_X, universe_.getWidth());
+        viewY_ = Math.floorMod(viewY_ + y - HEIGHT / 2, universe_.getHeight());
+        scrolled_ = true;
+        updateViewBeacons();
+        redrawEverything();
+        getParent().getHost().showPopupNotification("Life View: " + viewX_ + ", " + viewY_);
+    }
+
+    private void toggleCell(int x, int y) {
+        int ux = universeX(x);
+        int uy = universeY(y);
+        universe_.setAlive(ux, uy, !universe_.isAlive(ux, uy));
+        setLED(x, y, colorForCell(x, y));
+    }
+
+    private int universeX(int x) {
+        return (viewX_ + x - 1) % universe_.getWidth();
+    }
+
+    private int universeY(int y) {
+        return (viewY_ + y) % universe_.getHeight();
+    }
+
+    private int findBeacon(int ux, int uy) {
+        for (int i = 0; i < beaconCount_; i++) {
+            if (beaconX_[i] == ux && beaconY_[i] == uy) return i;
+        }
+        return -1;
+    }
+
+    private void addBeacon(int ux, int uy, int note) {
+        if (beaconCount_ == beaconX_.length) {
+            beaconX_ = Arrays.copyOf(beaconX_, beaconCount_ * 2);
+            beaconY_ = Arrays.copyOf(beaconY_, beaconCount_ * 2);
+            beaconNote_ = Arrays.copyOf(beaconNote_, beaconCount_ * 2);
+        }
+        int i = beaconCount_;
+        while (i > 0 && (beaconX_[i - 1] > ux || (beaconX_[i - 1] == ux && beaconY_[i - 1] > uy))) {
+            beaconX_[i] = beaconX_[i - 1];
+            beaconY_[i] = beaconY_[i - 1];
+            beaconNote_[i] = beaconNote_[i - 1];
+            i--;
+        }
+        beaconX_[i] = ux;
+        beaconY_[i] = uy;
+        beaconNote_[i] = note;
+        beaconCount_++;
+    }
+
+    private void removeBeacon(int index) {
+        int tail = beaconCount_ - index - 1;
+        System.arraycopy(beaconX_, index + 1, beaconX_, index, tail);
+        System.arraycopy(beaconY_, index + 1, beaconY_, index, tail);
+        System.arraycopy(beaconNote_, index + 1, beaconNote_, index, tail);
+        beaconCount_--;
+    }
+
+    private void updateViewBeacons() {
+        Arrays.fill(viewBeacons_, 0);
+        for (int i = 0; i < beaconCount_; i++) {
+            int dx = Math.floorMod(beaconX_[i] - viewX_, universe_.getWidth());
+            int dy = Math.floorMod(beaconY_[i] - viewY_, universe_.getHeight());
+            if (dx < VIEW_WIDTH && dy < HEIGHT) {
+                viewBeacons_[dy] |= 1L << dx;
             }
         }
-        return count;
+    }
+
+    private void sendNoteOn(int note, int neighbors) {
+        int velocity = 20 + (int)(neighbors * 13.375);
+        velocity = Math.min(127, Math.max(20, velocity));
+        getParent().sendToSecondOut(0x91, note, velocity);
+    }
+
+    private void sendNoteOff(int note) {
+        getParent().sendToSecondOut(0x81, note, 0);
     }
 
     private Color colorForCell(int x, int y) {
-        boolean isBeacon = beaconNote[x][y] != -1;
+        boolean isBeacon = (viewBeacons_[y] & (1L << (x - 1))) != 0;
+        int ux = universeX(x);
+        int uy = universeY(y);
         if (isBeacon && !running) {
-            return alive[x][y] ? MAGENTA : PINK;
+            return universe_.isAlive(ux, uy) ? MAGENTA : PINK;
         }
-        if (alive[x][y]) {
+        if (universe_.isAlive(ux, uy)) {
             return isBeacon ? MAGENTA : WHITE;
         }
         if (displayMode == 0) return OFF;
-        int age = ageSinceDeath[x][y];
+        int age = rampAge(universe_.getAge(ux, uy));
         switch (displayMode) {
             case 1: // Warm
                 if (age <= 2) return YELLOW;
@@ -0,0 +1,206 @@
+package com.theslowgrowth;
+
+/**
+ * A life-like cellular automaton rule, parsed from the usual notations:
+ * <ul>
+ *     <li>B/S: "B36/S23", "S23/B3", optionally with a number of states: "B2/S/C3"</li>
+ *     <li>S/B and Generations (S/B/C): "23/3", "/2/3", "345/2/4"</li>
+ * </ul>
+ * Cells in Generations rules don't die at once, they go through states-2 dying states in which they
+ * neither count as neighbours nor can be born.
+ * The rule is compiled for the bit-parallel engines: every neighbour count of the birth and survival
+ * sets becomes a pattern the four count bit planes are compared against, so a row of 64 cells is
+ * evaluated with a fixed sequence of mask operations.
+ */
+public class LifeRule
+{
+    public static final LifeRule CONWAY = parse("B3/S23");
+
+    /** Generations rules may have up to this many states, so dying cells fit into the cell ages */
+    public static final int MAXSTATES = LifeUniverse.DEAD + 1;
+
+    /**
+     * @throws IllegalArgumentException if the rule can't be parsed
+     */
+    public static LifeRule parse(String rule)
+    {
+        String text = rule.trim().toUpperCase().replace(" ", "");
+        String[] parts = text.split("/", -1);
+        if ((parts.length < 2) || (parts.length > 3))
+            throw new IllegalArgumentException("Rule must look like B3/S23 or 23/3: " + rule);
+
+        int birth = 0;
+        int survive = 0;
+        int states = 2;
+        if (text.indexOf('B') >= 0 || text.indexOf('S') >= 0)
+        {
+            boolean hasBirth = false;
+            boolean hasSurvive = false;
+            for (String part : parts)
+            {
+                if (part.startsWith("B"))
+                {
+                    birth = parseCounts(part.substring(1), rule);
+                    hasBirth = true;
+                }
+                else if (part.startsWith("S"))
+                {
+                    survive = parseCounts(part.substring(1), rule);
+                    hasSurvive = true;
+                }
+                else if (part.startsWith("C") || part.startsWith("G"))
+                    states = parseStates(part.substring(1), rule);
+                else
+                    states = parseStates(part, rule);
+            }
+            if (!hasBirth || !hasSurvive)
+                throw new IllegalArgumentException("Rule needs a B and an S part: " + rule);
+        }
+        else
+        {
+            survive = parseCounts(parts[0], rule);
+            birth = parseCounts(parts[1], rule);
+            if (parts.length == 3)
+                states = parseStates(parts[2], rule);
+        }
+        if ((birth & 1) != 0)
+            throw new IllegalArgumentException("Rules with B0 are not supported: " + rule);
+        return new LifeRule(birth, survive, states);
+    }
+
+    private LifeRule(int birth, int survive, int states)
+    {
+        birth_ = birth;
+        survive_ = survive;
+        states_ = states;
+        birthPatterns_ = patterns(birth);
+        survivePatterns_ = patterns(survive);
+        conway_ = (birth == (1 << 3)) && (survive == ((1 << 2) | (1 << 3))) && (states == 2);
+    }
+
+    /**
+     * @return the number of cell states, 2 for rules without dying states
+     */
+    public int getStates()
+    {
+        return states_;
+    }
+
+    /**
+     * @return the number of generations a cell stays in a dying state, 0 for plain B/S rules
+     */
+    public int getDecayStates()
+    {
+        return states_ - 2;
+    }
+
+    /**
+     * calculates 64 cells of the next generation
+     * @param alive  the cells that are alive now
+     * @param dying  the cells that are in a dying state now, they can't be born
+     * @param c0     bit planes of the living neighbour count, lowest bit first
+     * @return the cells that are alive in the next generation
+     */
+    public long nextRow(long alive, long dying, long c0, long c1, long c2, long c3)
+    {
+        if (conway_)
+            return c1 & ~c2 & ~c3 & (c0 | alive); // 3 neighbours, or 2 neighbours and alive
+
+        long born = 0;
+        for (int i = 0; i < birthPatterns_.length; i += 4)
+            born |= ~((c0 ^ birthPatterns_[i]) | (c1 ^ birthPatterns_[i + 1]) | (c2 ^ birthPatterns_[i + 2]) | (c3 ^ birthPatterns_[i + 3]));
+        long kept = 0;
+        for (int i = 0; i < survivePatterns_.length; i += 4)
+            kept |= ~((c0 ^ survivePatterns_[i]) | (c1 ^ survivePatterns_[i + 1]) | (c2 ^ survivePatterns_[i + 2]) | (c3 ^ survivePatterns_[i + 3]));
+        return (born & ~alive & ~dying) | (kept & alive);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("B");
+        appendCounts(sb, birth_);
+        sb.append("/S");
+        appendCounts(sb, survive_);
+        if (states_ > 2)
+            sb.append("/C").append(states_);
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof LifeRule))
+            return false;
+        LifeRule other = (LifeRule) o;
+        return (birth_ == other.birth_) && (survive_ == other.survive_) && (states_ == other.states_);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (birth_ << 9 | survive_) * 31 + states_;
+    }
+
+    /**
+     * @return per count in the set, the four values (0 or -1) its bits have in the count bit planes
+     */
+    private static long[] patterns(int counts)
+    {
+        long[] patterns = new long[Integer.bitCount(counts) * 4];
+        int i = 0;
+        for (int count = 0; count <= 8; count++)
+        {
+            if ((counts & (1 << count)) == 0)
+                continue;
+            for (int bit = 0; bit < 4; bit++)
+                patterns[i++] = ((count >> bit) & 1) != 0 ? -1L : 0L;
+        }
+        return patterns;
+    }
+
+    private static int parseCounts(String digits, String rule)
+    {
+        int counts = 0;
+        for (int i = 0; i < digits.length(); i++)
+        {
+            char c = digits.charAt(i);
+            if ((c < '0') || (c > '8'))
+                throw new IllegalArgumentException("Neighbour counts must be 0 to 8: " + rule);
+            counts |= 1 << (c - '0');
+        }
+        return counts;
+    }
+
+    private static int parseStates(String number, String rule)
+    {
+        int states;
+        try
+        {
+            states = Integer.parseInt(number);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid number of states: " + rule);
+        }
+        if ((states < 2) || (states > MAXSTATES))
+            throw new IllegalArgumentException("Number of states must be 2 to " + MAXSTATES + ": " + rule);
+        return states;
+    }
+
+    private static void appendCounts(StringBuilder sb, int counts)
+    {
+        for (int count = 0; count <= 8; count++)
+        {
+            if ((counts & (1 << count)) != 0)
+                sb.append(count);
+        }
+    }
+
+    private final int birth_;   // bit n set = born with n neighbours
+    private final int survive_; // bit n set = survives with n neighbours
+    private final int states_;
+    private final long[] birthPatterns_;
+    private final long[] survivePatterns_;
+    private final boolean conway_;
+}
@@ -0,0 +1,91 @@
+package com.theslowgrowth;
+
+/**
+ * A toroidal Game of Life board. Cell coordinates must lie within the board; row queries return
+ * up to 64 consecutive columns as a bit mask, bit 0 being the column passed in, and wrap around
+ * at the right edge.
+ */
+interface LifeUniverse
+{
+    /** age of cells that were never alive or have been dead for a long time */
+    int DEAD = 127;
+
+    int getWidth();
+    int getHeight();
+
+    boolean isAlive(int x, int y);
+
+    /**
+     * sets a cell directly. Living cells get age 0, killed cells count as long dead.
+     */
+    void setAlive(int x, int y, boolean alive);
+
+    /**
+     * @return generations since the cell died, 0 while it is alive. Cells past both the fade horizon
+     *         and the dying states of the rule are DEAD.
+     */
+    int getAge(int x, int y);
+
+    void clear();
+
+    /**
+     * dead cells up to this age are reported by getFadingBits(), older ones count as DEAD
+     */
+    void setFadeHorizon(int ticks);
+
+    /**
+     * sets the rule used by the following steps. Cells keep their state, dying cells keep dying.
+     */
+    void setRule(LifeRule rule);
+
+    /**
+     * calculates the next generation
+     */
+    void step();
+
+    /**
+     * @return the cells of columns x..x+count-1 in row y that were born or died in the last step
+     */
+    long getChangedBits(int x, int y, int count);
+
+    /**
+     * @return the dead cells of columns x..x+count-1 in row y whose age is within the fade horizon
+     */
+    long getFadingBits(int x, int y, int count);
+
+    /**
+     * @return number of living neighbours the cell had before the last step
+     */
+    int getLastNeighborCount(int x, int y);
+
+    /**
+     * @return number of cells that were evaluated in the last step
+     */
+    long getLastStepCells();
+
+    /**
+     * @return a hash of the living cells and of the dying cells with their stages. It is kept up to date
+     *         incrementally from the rows that change, equal boards have equal hashes, and the empty board
+     *         hashes to 0.
+     */
+    long getHash();
+
+    /**
+     * hash contribution of one packed row word. XORing the contributions of all words gives the board's hash,
+     * so a changed word is accounted for with hash ^= hashWord(old, pos) ^ hashWord(new, pos).
+     * @param position unique number of the word within the board
+     */
+    static long hashWord(long word, long position)
+    {
+        if (word == 0)
+            return 0; // empty regions don't contribute, however large the board is
+        // murmur3 finalizer over the word mixed with a per-position key
+        long h = word ^ (position * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
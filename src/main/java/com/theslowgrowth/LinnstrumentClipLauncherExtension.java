@@ -4,9 +4,12 @@ import com.bitwig.extension.api.util.midi.ShortMidiMessage;
 import com.bitwig.extension.callback.DoubleValueChangedCallback;
 import com.bitwig.extension.callback.EnumValueChangedCallback;
 import com.bitwig.extension.callback.ShortMidiMessageReceivedCallback;
+import com.bitwig.extension.callback.StringValueChangedCallback;
 import com.bitwig.extension.controller.api.*;
 import com.bitwig.extension.controller.ControllerExtension;
 
+import java.util.Arrays;
+
 public class LinnstrumentClipLauncherExtension extends ControllerExtension {
     LinnstrumentClipLauncherExtension(final LinnstrumentClipLauncherExtensionDefinition definition, final ControllerHost host) {
         super(definition, host);
@@ -22,12 +25,10 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
     public class MIDISettingsChangedCallback implements DoubleValueChangedCallback, EnumValueChangedCallback
     {
         public void valueChanged(double newValue) {
-            int bend = (int) (bendRange_.get() * (BENDMAX - BENDMIN) + BENDMIN);
-            noteInput_.setUseExpressiveMidi(true, Integer.parseInt(baseChannel_.get()) - 1, bend);
+            updateExpressiveMidi();
         }
         public void valueChanged(String newValue) {
-            int bend = (int) (bendRange_.get() * (BENDMAX - BENDMIN) + BENDMIN);
-            noteInput_.setUseExpressiveMidi(true, Integer.parseInt(baseChannel_.get()) - 1, bend);
+            updateExpressiveMidi();
         }
     }
     public class Button2CCChangedCallback implements DoubleValueChangedCallback
@@ -36,6 +37,61 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
             configureUserButton2((int) (newValue * (USERBUTTONCCMAX - USERBUTTONCCMIN) + USERBUTTONCCMIN));
         }
     }
+    public class LEDBudgetChangedCallback implements DoubleValueChangedCallback
+    {
+        public void valueChanged(double newValue) {
+            ledOutput_.setBudget((int) (newValue * (LEDBUDGETMAX - LEDBUDGETMIN) + LEDBUDGETMIN));
+        }
+    }
+    public class LifeUniverseChangedCallback implements EnumValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            lifePage_.setUniverseSize(lifeUniverseSize(newValue));
+        }
+    }
+    public class LifeRuleChangedCallback implements StringValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            lifePage_.setRule(newValue);
+        }
+    }
+    public class ClipColorMappingChangedCallback implements EnumValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            Color.setMapping(clipColorMapping(newValue));
+            clipLauncher_.remapClipColors();
+        }
+    }
+    public class DistinctClipColorsChangedCallback implements EnumValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            clipLauncher_.setDistinctNeighbourColors(newValue.equals("Yes"));
+        }
+    }
+    public class ChordWindowChangedCallback implements DoubleValueChangedCallback
+    {
+        public void valueChanged(double newValue) {
+            clipLauncher_.setChordWindow((int) Math.round(newValue * (CHORDWINDOWMAX - CHORDWINDOWMIN) + CHORDWINDOWMIN));
+        }
+    }
+    public class ClipReleaseChangedCallback implements EnumValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            clipLauncher_.setReleaseBehaviour(clipRelease(newValue));
+        }
+    }
+    public class LaunchQuantizationChangedCallback implements EnumValueChangedCallback
+    {
+        public void valueChanged(String newValue) {
+            clipLauncher_.setLaunchQuantization(newValue);
+        }
+    }
+    public class MeterFrameRateChangedCallback implements DoubleValueChangedCallback
+    {
+        public void valueChanged(double newValue) {
+            clipLauncher_.setMeterFrameRate((int) Math.round(newValue * (METERFPSMAX - METERFPSMIN) + METERFPSMIN));
+        }
+    }
     public class FinishOnChangeBackChangedCallback implements EnumValueChangedCallback
     {
         public void valueChanged(String newValue) {
@@ -51,9 +107,13 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
         host_ = getHost();
         host_.getMidiInPort(0).setMidiCallback((ShortMidiMessageReceivedCallback) msg -> onMidi0(msg));
         midiOut_ = host_.getMidiOutPort(0);
+        nrpnOutput_ = new NRPNOutput(midiOut_, MAXNRPN);
         midiOutQwerty_ = host_.getMidiOutPort(1);
         noteInput_ = host_.getMidiInPort(0).createNoteInput("");
         application_ = host_.createApplication();
+        // replies of the LinnStrument come in as NRPNs
+        nrpnParser_.addListener((channel, NRPN, value) -> onMidiNRPN(NRPN, value));
+        queryDeviceSettings();
 
         // Load settings //////////////////////////////////////////
 
@@ -72,32 +132,105 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
         // User button 2 CC
         SettableRangedValue button2CC = host_.getPreferences().getNumberSetting("User Button 2 CC", "Hardware", USERBUTTONCCMIN, USERBUTTONCCMAX, 1, "", DEFUSERBUTTON2CC);
         configureUserButton2((int) (button2CC.get() * (USERBUTTONCCMAX - USERBUTTONCCMIN) + USERBUTTONCCMIN));
+        // maximum MIDI bytes of LED updates per flush. Every LED costs 6 to 9 bytes.
+        SettableRangedValue ledBudget = host_.getPreferences().getNumberSetting("LED bytes per flush", "Hardware", LEDBUDGETMIN, LEDBUDGETMAX, 3, "bytes", DEFLEDBUDGET);
+        // settings and LEDs are only sent if they changed, after reconnecting the LinnStrument it needs everything again
+        Signal resend = host_.getPreferences().getSignalSetting("Reconnected LinnStrument", "Hardware", "Resend settings and LEDs");
+        // time from a button press to its LEDs being sent, printed to the controller script console
+        SettableEnumValue measureLatency = host_.getPreferences().getEnumSetting("Measure input to LED latency", "Diagnostics", new String[]{"Off", "On"}, "Off");
+        Signal printLatency = host_.getPreferences().getSignalSetting("Input to LED latency", "Diagnostics", "Print to console");
+        // rates of flushes, MIDI traffic and timers
+        SettableRangedValue metricsPrint = host_.getPreferences().getNumberSetting("Print metrics every", "Diagnostics", 0, METRICSPRINTMAX, 1, "s (0 = off)", 0);
+        Signal showMetrics = host_.getPreferences().getSignalSetting("Metrics page", "Diagnostics", "Show on LinnStrument");
         // finish recording when changing back to clip launcher
         SettableEnumValue finishOnChangeBack = host_.getPreferences().getEnumSetting("Finish Rec when changing back to clip launcher", "Behaviour", new String[]{"Yes", "No"}, "Yes");
         // select the default mode of the low row
-        SettableEnumValue defaultLowRowMode = host_.getPreferences().getEnumSetting("Low row mode on startup", "Behaviour", new String[]{"Stop Track", "Select Track"}, "Stop Track");
+        SettableEnumValue defaultLowRowMode = host_.getPreferences().getEnumSetting("Low row mode on startup", "Behaviour", new String[]{"Stop Track", "Select Track", "Launch Progress"}, "Stop Track");
         //getHost().println("Low Row Mode: " + defaultLowRowMode.get());
+        // how clip colours are turned into LinnStrument colours
+        SettableEnumValue colorMapping = host_.getPreferences().getEnumSetting("Clip colour mapping", "Behaviour", CLIPCOLORMAPPINGS, CLIPCOLORMAPPINGS[0]);
+        // show the runner-up colour if a clip would look like the clip to its left
+        SettableEnumValue distinctColors = host_.getPreferences().getEnumSetting("Distinct colours for neighbouring clips", "Behaviour", new String[]{"No", "Yes"}, "No");
+        // clips pressed within this time are launched together
+        SettableRangedValue chordWindow = host_.getPreferences().getNumberSetting("Chord window for launching clips", "Behaviour", CHORDWINDOWMIN, CHORDWINDOWMAX, 1, "ms", DEFCHORDWINDOW);
+        // momentary clip launching
+        SettableEnumValue clipRelease = host_.getPreferences().getEnumSetting("Releasing a clip button", "Behaviour", CLIPRELEASES, CLIPRELEASES[0]);
+        // what the launch progress on the low row counts down to. API 6 can't read bitwig's default launch
+        // quantization, so it has to be set to the same value here.
+        SettableEnumValue launchQuantization = host_.getPreferences().getEnumSetting("Launch quantization", "Behaviour", LAUNCHQUANTIZATIONS, LAUNCHQUANTIZATIONS[4]);
+        // how often the clip launcher's track meters are drawn
+        SettableRangedValue meterFrameRate = host_.getPreferences().getNumberSetting("Meter frame rate", "Behaviour", METERFPSMIN, METERFPSMAX, 1, "fps", ClipLauncherPage.DEFMETERFPS);
+        // the clip launcher observes a larger window than it shows, for scrolling without waiting for bitwig.
+        // The banks are created here, so a change takes effect after restarting the extension.
+        SettableEnumValue clipWindow = host_.getPreferences().getEnumSetting("Observed clip window", "Behaviour", CLIPWINDOWS, CLIPWINDOWS[2]);
+        // slots per block of the clip launcher's overview mode, the overview observes a bank of its own
+        SettableEnumValue overviewBlocks = host_.getPreferences().getEnumSetting("Overview block size", "Behaviour", OVERVIEWBLOCKSIZES, OVERVIEWBLOCKSIZES[2]);
+        // size of the Game of Life universe, the surface shows a part of it
+        SettableEnumValue lifeUniverse = host_.getPreferences().getEnumSetting("Life universe", "Life", LIFEUNIVERSESIZES, LIFEUNIVERSESIZES[0]);
+        // rule of the Game of Life, B/S ("B36/S23") or Generations ("/2/3") notation
+        SettableStringValue lifeRule = host_.getPreferences().getStringSetting("Life rule", "Life", 24, "B3/S23");
         // TODO: none of these settings show their actual value - the value is only available asynchronously after init() is finished. Workaround?
         // Late Init //////////////////////////
 
         buffer_ = new LEDBuffer(deviceWidth, 8);
+        ledOutput_ = new LEDOutput(midiOut_, deviceWidth, 8);
+        ledOutput_.setBudget((int) (ledBudget.get() * (LEDBUDGETMAX - LEDBUDGETMIN) + LEDBUDGETMIN));
+        // mode and navigation LEDs go out before the clip grid / game content
+        ledOutput_.setColumnPriority(0, LEDOutput.PRIORITY_CONTROL);
+        ledOutput_.setColumnPriority(1, LEDOutput.PRIORITY_NAVIGATION);
+        ledOutput_.setColumnPriority(deviceWidth - 2, LEDOutput.PRIORITY_NAVIGATION);
+        ledOutput_.setColumnPriority(deviceWidth - 1, LEDOutput.PRIORITY_NAVIGATION);
 
         transport_ = host_.createTransport();
         transport_.isPlaying().markInterested();
         transport_.getPosition().markInterested();
         transport_.tempo().value().markInterested();
+        scheduler_ = new TransportScheduler(host_, transport_, metrics_);
 
-        noteInput_.setUseExpressiveMidi(true, Integer.parseInt(baseChannel_.get()) - 1, (int) bendRange_.get());
+        updateExpressiveMidi();
         noteInput_.setShouldConsumeEvents(false);
 
         sendInitializationMessages();
 
         boolean finish = finishOnChangeBack.get().equals("Yes");
-        clipLauncher_ = new ClipLauncherPage(deviceWidth, 8, this, finish, defaultLowRowMode.get());
+        Color.setMapping(clipColorMapping(colorMapping.get()));
+        clipLauncher_ = new ClipLauncherPage(deviceWidth, 8, this, finish, defaultLowRowMode.get(), clipWindowFactor(clipWindow.get()),
+                overviewBlockSize(overviewBlocks.get()));
+        clipLauncher_.setDistinctNeighbourColors(distinctColors.get().equals("Yes"));
+        clipLauncher_.setChordWindow((int) Math.round(chordWindow.get() * (CHORDWINDOWMAX - CHORDWINDOWMIN) + CHORDWINDOWMIN));
+        clipLauncher_.setReleaseBehaviour(clipRelease(clipRelease.get()));
+        clipLauncher_.setLaunchQuantization(launchQuantization.get());
+        clipLauncher_.setMeterFrameRate((int) Math.round(meterFrameRate.get() * (METERFPSMAX - METERFPSMIN) + METERFPSMIN));
         qwerty_ = new QwertyPage(deviceWidth, 8, this, clipLauncher_);
         paintPage_ = new PaintPage(deviceWidth, 8, this);
         flappyPage_ = new FlappyPage(deviceWidth, 8, this);
         lifePage_ = new LifePage(deviceWidth, 8, this);
+        metricsPage_ = new MetricsPage(deviceWidth, 8, this, metrics_);
+        metrics_.track(MetricsRegistry.CCS_LINNSTRUMENT,
+                () -> ledOutput_.getSentCCCount() + nrpnOutput_.getSentCCCount() + sentCCCount_);
+        LinnstrumentPage[] pages = { clipLauncher_, lifePage_, qwerty_, paintPage_, flappyPage_, metricsPage_ };
+        metrics_.track(MetricsRegistry.LEDS_COALESCED, () -> {
+            long coalesced = buffer_.getCoalescedCount();
+            for (LinnstrumentPage page : pages)
+                coalesced += page.getBuffer().getCoalescedCount();
+            return coalesced;
+        });
+        metrics_.track(MetricsRegistry.LEDS_SUPPRESSED, () -> ledOutput_.getSuppressedCount());
+        metrics_.track(MetricsRegistry.LEDS_DEFERRED, () -> ledOutput_.getDeferredCount());
+        metrics_.trackValue(MetricsRegistry.JITTER_P50, () -> scheduler_.getJitterP50());
+        metrics_.trackValue(MetricsRegistry.JITTER_P99, () -> scheduler_.getJitterP99());
+        metricsTask_ = scheduler_.createMillisTask(() -> sampleMetrics(), METRICSPERIODMS);
+        scheduler_.start(metricsTask_);
+
+        // cells that switch pages, on top of every page. Releases are swallowed along with the presses.
+        globalRoutes_ = new InputRouter(deviceWidth, 8, 1);
+        globalRoutes_.bind(0, 0, 4, 1, 1, (x, y, v) -> nextPage());
+        globalRoutes_.bind(0, 0, 5, 1, 1, (x, y, v) -> {
+            if (switchEnabled_)
+                changePage(null);
+        });
+        lifePage_.setUniverseSize(lifeUniverseSize(lifeUniverse.get()));
+        lifePage_.setRule(lifeRule.get());
         changePage(null); // enter normal linnstrument mode
 
         // Add all observers
@@ -106,6 +239,25 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
         baseChannel_.addValueObserver(new MIDISettingsChangedCallback());
         bendRange_.addValueObserver(new MIDISettingsChangedCallback());
         button2CC.addValueObserver(new Button2CCChangedCallback());
+        ledBudget.addValueObserver(new LEDBudgetChangedCallback());
+        resend.addSignalObserver(() -> resendToDevice());
+        measureLatency.addValueObserver(value -> setLatencyMeasured(value.equals("On")));
+        metricsPrint.addValueObserver(value -> metricsPrintSeconds_ = (int) Math.round(value * METRICSPRINTMAX));
+        showMetrics.addSignalObserver(() -> changePage(metricsPage_));
+        printLatency.addSignalObserver(() -> {
+            if (latency_ != null)
+                latency_.report();
+            else
+                host_.println("Input to LED latency: switch on \"Measure input to LED latency\" first");
+        });
+        lifeUniverse.addValueObserver(new LifeUniverseChangedCallback());
+        lifeRule.addValueObserver(new LifeRuleChangedCallback());
+        colorMapping.addValueObserver(new ClipColorMappingChangedCallback());
+        distinctColors.addValueObserver(new DistinctClipColorsChangedCallback());
+        chordWindow.addValueObserver(new ChordWindowChangedCallback());
+        clipRelease.addValueObserver(new ClipReleaseChangedCallback());
+        launchQuantization.addValueObserver(new LaunchQuantizationChangedCallback());
+        meterFrameRate.addValueObserver(new MeterFrameRateChangedCallback());
 
         // For now just show a popup notification for verification that it is running.
         host_.showPopupNotification("LinnStrument ClipLauncher started");
@@ -115,56 +267,139 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
     public void exit() {
         // leave user firmware mode
         sendNRPN(245, 0);
+        nrpnOutput_.flush();
+        host_.println(String.format("NRPN output: %d sent, %d saved, %d CCs", nrpnOutput_.getSentCount(),
+                nrpnOutput_.getSavedCount(), nrpnOutput_.getSentCCCount()));
         host_.showPopupNotification("LinnStrument ClipLauncher exited");
     }
 
     @Override
     public void flush() {
+        // mode changes go out before the LEDs of the new page
+        nrpnOutput_.flush();
         if (page_ != null) {
+            page_.prepareFlush();
             if (page_.getBuffer().isDirty())
             {
                 //host_.println("merging dirty leds from page");
-                buffer_.mergeWith(page_.getBuffer());
+                buffer_.mergeDirtyFrom(page_.getBuffer());
                 page_.getBuffer().flagClean();
             }
         }
+        metrics_.increment(MetricsRegistry.FLUSHES);
+        metrics_.add(MetricsRegistry.DIRTY_CELLS, buffer_.getDirtyCount());
         updateDirtyLEDs();
     }
 
+    /**
+     * switches measuring the input to LED latency on or off. Off, nothing is stamped or recorded.
+     */
+    private void setLatencyMeasured(boolean measured) {
+        if (measured == (latency_ != null))
+            return;
+        latency_ = measured ? new LatencyTracker(host_, LATENCYPAGES) : null;
+        if (latency_ != null)
+            latency_.setPage(latencyPageIndex(page_));
+        buffer_.setLatencyTracker(latency_);
+        ledOutput_.setLatencyTracker(latency_);
+        for (LinnstrumentPage page : new LinnstrumentPage[] { clipLauncher_, lifePage_, qwerty_, paintPage_, flappyPage_, metricsPage_ })
+            page.getBuffer().setLatencyTracker(latency_);
+    }
+
+    /**
+     * @return index of a page in LATENCYPAGES
+     */
+    private int latencyPageIndex(LinnstrumentPage page) {
+        LinnstrumentPage[] pages = { null, clipLauncher_, lifePage_, qwerty_, paintPage_, flappyPage_, metricsPage_ };
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] == page)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * writes an NRPN with the next flush, unless the LinnStrument already has the value (see NRPNOutput)
+     */
     private void sendNRPN(int NRPN, int value) {
+        nrpnOutput_.set(NRPN, value);
+    }
 
-        sendCC(99, NRPN >> 7);    // NRPN number MSB
-        sendCC(98, NRPN & 0x7F);  // NRPN number LSB
-        sendCC(6, value >> 7);    // NRPN value MSB
-        sendCC(38, value & 0x7F); // NRPN value LSB
-        sendCC(100, 127); // RPN parameter number Reset MSB
-        sendCC(101, 127); // RPN parameter number Reset LSB
+    /**
+     * the bend range slider sends a value for every step it is dragged over, only tell bitwig about real changes
+     */
+    private void updateExpressiveMidi() {
+        int channel = Integer.parseInt(baseChannel_.get()) - 1;
+        int bend = (int) (bendRange_.get() * (BENDMAX - BENDMIN) + BENDMIN);
+        if ((channel == expressiveChannel_) && (bend == expressiveBend_))
+            return;
+        expressiveChannel_ = channel;
+        expressiveBend_ = bend;
+        noteInput_.setUseExpressiveMidi(true, channel, bend);
+    }
+
+    /**
+     * forgets what the LinnStrument is known to show and have set, after it has been reconnected or power cycled,
+     * and sends it all again
+     */
+    private void resendToDevice() {
+        nrpnOutput_.invalidate();
+        ledOutput_.invalidate();
+        for (int NRPN = 0; NRPN < MAXNRPN; NRPN++)
+        {
+            if (wantedSettings_[NRPN] >= 0)
+                sendNRPN(NRPN, wantedSettings_[NRPN]);
+        }
+        sendNRPN(245, (page_ != null) ? 1 : 0);
+        sendCC(13, 12); // MIDI decimation rate for user firmware mode
+        buffer_.flagDirty();
+        host_.requestFlush();
     }
 
     private void sendCC(int CC, int value) {
         midiOut_.sendMidi(0xB0, CC, value);
+        sentCCCount_++;
+    }
+
+    /**
+     * sends a message on the second MIDI output (QWERTY, Life and Flappy Bird notes)
+     */
+    public void sendToSecondOut(int status, int data1, int data2) {
+        midiOutQwerty_.sendMidi(status, data1, data2);
+        metrics_.increment(MetricsRegistry.MESSAGES_SECOND_OUT);
+    }
+
+    /**
+     * host.scheduleTask(), counted in the metrics
+     * @param source one of MetricsRegistry.SCHEDULE_*
+     */
+    public void scheduleTask(Runnable task, long delayMillis, int source) {
+        metrics_.increment(source);
+        host_.scheduleTask(task, delayMillis);
     }
 
     void changePage(LinnstrumentPage page) {
         //switch2PressCount_ = 0;
+        if (latency_ != null)
+            latency_.setPage(latencyPageIndex(page));
         if (page_ != null)
             page_.hide();
 
 
         if (page == null) {
             // disable leds that are still on
-            LEDBuffer b = new LEDBuffer(buffer_.getWidth(), buffer_.getHeight());
-            buffer_.mergeWith(b); // b has all LEDs set to OFF
-            // send the now dirty flagged leds
-            updateDirtyLEDs();
+            buffer_.fill(Color.OFF);
+            // send the now dirty flagged leds, they must be out before leaving user firmware mode
+            ledOutput_.sendAll(buffer_);
 
             enableNotePassthrough();
             // leave user firmware mode
             sendNRPN(245, 0);
+            host_.requestFlush();
 
             page_ = page;
             switchEnabled_ = false;
-            host_.scheduleTask(() -> reEnableSwitching(), 400);
+            scheduleTask(() -> reEnableSwitching(), 400, MetricsRegistry.SCHEDULE_EXTENSION);
         } else {
             // re-enable the user mode if it was off before
             if (page_ == null)
@@ -176,10 +411,12 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
             }
 
             switchEnabled_ = false;
-            host_.scheduleTask(() -> reEnableSwitching(), 400);
+            scheduleTask(() -> reEnableSwitching(), 400, MetricsRegistry.SCHEDULE_EXTENSION);
 
             page_ = page;
             page_.show();
+            page_.prepareFlush();
+            // only cells that differ from what the hardware shows are actually sent (see LEDOutput)
             buffer_.mergeWith(page_.getBuffer());
             page_.getBuffer().flagClean();
             host_.requestFlush(); // update LEDs soon
@@ -198,25 +435,27 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
 
     private void updateDirtyLEDs()
     {
-        if (buffer_.isDirty()) {
-            for (int x = 0; x < buffer_.getWidth(); x++) {
-                Boolean xSent = false;
-                for (int y = 0; y < buffer_.getHeight(); y++) {
-                    if (buffer_.isDirty(x, y)) {
-                        if (!xSent)
-                        {
-                            xSent = true;
-                            sendCC(20, (x & 0x7F));
-                        }
-                        sendCC(21, (7 - y) & 0x7F);
-                        sendCC(22, buffer_.get(x, y).getValue());
-                    }
-                }
-            }
-            buffer_.flagClean();
+        if (ledOutput_.send(buffer_) && !carryOverScheduled_)
+        {
+            // some LEDs didn't fit into the budget, come back for them shortly
+            carryOverScheduled_ = true;
+            scheduleTask(() -> {
+                carryOverScheduled_ = false;
+                host_.requestFlush();
+            }, CARRYOVERDELAYMS, MetricsRegistry.SCHEDULE_EXTENSION);
         }
     }
 
+    public LEDOutput getLEDOutput()
+    {
+        return ledOutput_;
+    }
+
+    public LEDBuffer getHardwareBuffer()
+    {
+        return buffer_;
+    }
+
     private void setLED(int x, int y, Color c)
     {
         sendCC(20, (x & 0x7F));
@@ -226,25 +465,56 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
 
     private void configureUserButton2(int CC)
     {
-        sendNRPN(229, 3); // make switch 2 send a midi CC message
-        sendNRPN(258, CC); // set CC value
+        setDeviceSetting(229, 3); // make switch 2 send a midi CC message
+        setDeviceSetting(258, CC); // set CC value
         userButton2CC_ = CC;
     }
 
     private void sendInitializationMessages()
     {
-        // user switch 2 will be our toggle between the two modes
-        configureUserButton2(16);
-
         ////////////////////////////////////////////////////////////////////////////
         // make global settings for the note mode (regular Linnstrument mode)
-        sendNRPN(19, 24); // bend range: 24 semitones
+        setDeviceSetting(19, 24); // bend range: 24 semitones
 
         ////////////////////////////////////////////////////////////////////////////
         // make global settings for the clip launcher mode
         sendCC(13, 12); // set MIDI decimation rate for user firmware mode
     }
 
+    /**
+     * cycles through the pages: clip launcher, life, qwerty, paint, flappy and back to the clip launcher
+     */
+    private void nextPage() {
+        if (!switchEnabled_)
+            return;
+        if (page_ == null || page_ == clipLauncher_) {
+            changePage(lifePage_);
+        } else if (page_ == lifePage_) {
+            changePage(qwerty_);
+        } else if (page_ == qwerty_) {
+            changePage(paintPage_);
+        } else if (page_ == paintPage_) {
+            changePage(flappyPage_);
+        } else if (page_ == flappyPage_ || page_ == metricsPage_) {
+            changePage(clipLauncher_);
+        }
+    }
+
+    /**
+     * takes a sample of the metrics every second, prints the summary every metricsPrintSeconds_
+     * and redraws the metrics page if it is shown
+     */
+    private void sampleMetrics() {
+        metrics_.sample();
+        metricsSamples_++;
+        if ((metricsPrintSeconds_ > 0) && (metricsSamples_ % metricsPrintSeconds_ == 0))
+            host_.println(metrics_.summary());
+        if (page_ == metricsPage_) {
+            metricsPage_.update();
+            host_.requestFlush();
+        }
+    }
+
     private void onMidi0(ShortMidiMessage msg) {
         if (processIncomingNRPN(msg))
             return;
@@ -260,32 +530,19 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
                 int y = 7 - (msg.getStatusByte() & 0x0F); // coordinate transform: top-down
                 int x = msg.getData1();
                 int velo = msg.getData2();
-                if (x == 0 && y == 4) {
-                    if (msg.isNoteOn() && switchEnabled_) {
-                        if (page_ == null || page_ == clipLauncher_) {
-                            changePage(lifePage_);
-                        } else if (page_ == lifePage_) {
-                            changePage(qwerty_);
-                        } else if (page_ == qwerty_) {
-                            changePage(paintPage_);
-                        } else if (page_ == paintPage_) {
-                            changePage(flappyPage_);
-                        } else if (page_ == flappyPage_) {
-                            changePage(clipLauncher_);
-                        }
-                    }
-                    return;
-                }
-                if ((x == 0) && (y == 5))
+                // only the LEDs changed by the button's handler are timed
+                if (latency_ != null)
+                    latency_.inputReceived();
+                // the page switching cells are the same on every page, the rest belongs to the page
+                if (msg.isNoteOn())
                 {
-                    if (msg.isNoteOn() && switchEnabled_)
-                        changePage(null);
-                    return;
+                    if (!globalRoutes_.press(0, x, y, velo))
+                        page_.buttonDown(x, y, velo);
                 }
-                if (msg.isNoteOn())
-                    page_.buttonDown(x, y, velo);
-                else
+                else if (!globalRoutes_.release(0, x, y))
                     page_.buttonUp(x, y);
+                if (latency_ != null)
+                    latency_.inputHandled();
             }
         }
         else {
@@ -328,7 +585,64 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
     }
 
     private void onMidiNRPN(int NRPN, int value) {
+        if ((NRPN < 0) || (NRPN >= MAXNRPN))
+            return;
+        if (nrpnOutput_.getKnown(NRPN) < 0)
+            host_.println("LinnStrument setting " + NRPN + ": " + value);
+        nrpnOutput_.assume(NRPN, value);
+        // a setting we want differently has been reported, push it now (nothing is sent if it matches)
+        if (wantedSettings_[NRPN] >= 0)
+            sendNRPN(NRPN, wantedSettings_[NRPN]);
+    }
+
+    /**
+     * asks the LinnStrument for the settings we change, so that they are only sent if they differ.
+     * Firmware that doesn't answer gets the settings sent anyway after QUERYTIMEOUTMS.
+     */
+    private void queryDeviceSettings()
+    {
+        Arrays.fill(wantedSettings_, -1);
+        for (int NRPN : QUERIEDSETTINGS)
+            nrpnOutput_.sendNow(299, NRPN); // request the value of an NRPN
+        queryPending_ = true;
+        scheduleTask(() -> {
+            queryPending_ = false;
+            for (int NRPN : QUERIEDSETTINGS)
+            {
+                if (wantedSettings_[NRPN] >= 0)
+                    sendNRPN(NRPN, wantedSettings_[NRPN]);
+            }
+        }, QUERYTIMEOUTMS, MetricsRegistry.SCHEDULE_EXTENSION);
+    }
+
+    /**
+     * @return a setting as last reported by (or sent to) the LinnStrument, -1 if it isn't known
+     */
+    int getDeviceSetting(int NRPN)
+    {
+        return nrpnOutput_.getKnown(NRPN);
+    }
+
+    /**
+     * changes a setting of the LinnStrument. It is only sent if the device has it set differently (see NRPNOutput);
+     * if its value is still being queried, the reply decides.
+     */
+    private void setDeviceSetting(int NRPN, int value)
+    {
+        wantedSettings_[NRPN] = value;
+        if (queryPending_ && isQueried(NRPN) && (nrpnOutput_.getKnown(NRPN) < 0))
+            return;
+        sendNRPN(NRPN, value);
+    }
 
+    private boolean isQueried(int NRPN)
+    {
+        for (int q : QUERIEDSETTINGS)
+        {
+            if (q == NRPN)
+                return true;
+        }
+        return false;
     }
 
     public void enablePerRowChannels() {
@@ -341,42 +655,57 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
         getHost().requestFlush();
     }
 
-    private Boolean processIncomingNRPN(ShortMidiMessage msg) {
-        if (msg.isControlChange()) {
-            // number MSB
-            if (msg.getData1() == 99) {
-                currentNRPN_ &= 0x007F;
-                currentNRPN_ |= msg.getData2() << 7;
-                NRPNValueComplete_ = 0; // reset flags
-                return true;
-            }
-            // number LSB
-            else if (msg.getData1() == 98) {
-                currentNRPN_ &= 0xFF80;
-                currentNRPN_ |= msg.getData2() & 0x7F;
-                NRPNValueComplete_ = 0; // reset flags
-                return true;
-            }
-            // value ´MSB
-            else if (msg.getData1() == 6) {
-                currentNRPNValue_ &= 0x007F;
-                currentNRPNValue_ |= msg.getData2() << 7;
-                NRPNValueComplete_ |= 0x02;
-                if (NRPNValueComplete_ == 0x03)
-                    onMidiNRPN(currentNRPN_, currentNRPNValue_);
-                return true;
-            }
-            // value LSB
-            else if (msg.getData1() == 38) {
-                currentNRPNValue_ &= 0xFF80;
-                currentNRPNValue_ |= msg.getData2() & 0x7F;
-                NRPNValueComplete_ |= 0x01;
-                if (NRPNValueComplete_ == 0x03)
-                    onMidiNRPN(currentNRPN_, currentNRPNValue_);
-                return true;
-            }
+    private boolean processIncomingNRPN(ShortMidiMessage msg) {
+        return nrpnParser_.process(msg.getStatusByte(), msg.getData1(), msg.getData2());
+    }
+
+    /**
+     * @return edge length of the Life universe for a preference value, 0 for the surface size
+     */
+    private static int lifeUniverseSize(String setting)
+    {
+        if (setting.equals(LIFEUNIVERSESIZES[0]))
+            return 0;
+        return Integer.parseInt(setting.substring(0, setting.indexOf(' ')));
+    }
+
+    /**
+     * @return how many visible grids the observed clip window spans in each direction
+     */
+    private static int clipWindowFactor(String setting)
+    {
+        for (int i = 0; i < CLIPWINDOWS.length; i++)
+        {
+            if (CLIPWINDOWS[i].equals(setting))
+                return i + 1;
         }
-        return false;
+        return 1;
+    }
+
+    /**
+     * @return edge length of the overview blocks for a preference value, 0 if the overview is off
+     */
+    private static int overviewBlockSize(String setting)
+    {
+        if (setting.equals(OVERVIEWBLOCKSIZES[0]))
+            return 0;
+        return Integer.parseInt(setting.substring(0, setting.indexOf(' ')));
+    }
+
+    private static ClipLauncherPage.ReleaseBehaviour clipRelease(String setting)
+    {
+        if (setting.equals(CLIPRELEASES[1]))
+            return ClipLauncherPage.ReleaseBehaviour.STOP;
+        if (setting.equals(CLIPRELEASES[2]))
+            return ClipLauncherPage.ReleaseBehaviour.RETURN;
+        return ClipLauncherPage.ReleaseBehaviour.NONE;
+    }
+
+    private static ColorMapping clipColorMapping(String setting)
+    {
+        if (setting.equals(CLIPCOLORMAPPINGS[1]))
+            return LabColorMapping.lut();
+        return Color.HUE_LUT;
     }
 
     private void reEnableSwitching()
@@ -389,23 +718,39 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
         return transport_;
     }
     public Application getApplication() { return application_; }
+    public TransportScheduler getScheduler() { return scheduler_; }
+    MetricsRegistry getMetrics() { return metrics_; }
 
     private NoteInput noteInput_;
     private Transport transport_;
+    private TransportScheduler scheduler_;
+    private final MetricsRegistry metrics_ = new MetricsRegistry();
+    private MetricsPage metricsPage_;
+    private TransportScheduler.Task metricsTask_;
+    private int metricsPrintSeconds_;  // 0 if the summary isn't printed
+    private int metricsSamples_;
+    private long sentCCCount_;
     private Application application_;
     private LinnstrumentPage page_ = null;
     private LEDBuffer buffer_;
+    private LEDOutput ledOutput_;
+    private boolean carryOverScheduled_ = false;
     private ControllerHost host_ = getHost();
     private MidiOut midiOut_;
     private MidiOut midiOutQwerty_;
     private ClipLauncherPage clipLauncher_;
+    private InputRouter globalRoutes_;
     private QwertyPage qwerty_;
     private PaintPage paintPage_;
     private FlappyPage flappyPage_;
     private LifePage lifePage_;
-    private int currentNRPN_ = 0;
-    private int currentNRPNValue_ = 0;
-    private int NRPNValueComplete_ = 0;
+    private final NRPNParser nrpnParser_ = new NRPNParser();
+    private NRPNOutput nrpnOutput_;
+    private LatencyTracker latency_; // null if the latency isn't measured
+    private int expressiveChannel_ = -1; // what bitwig was last told about the LinnStrument's MPE
+    private int expressiveBend_ = -1;
+    private final int[] wantedSettings_ = new int[MAXNRPN]; // -1 if we don't change the setting
+    private boolean queryPending_; // the startup query of the settings hasn't timed out yet
     private boolean switchEnabled_ = true;
 
     private SettableRangedValue bendRange_;
@@ -418,6 +763,27 @@ public class LinnstrumentClipLauncherExtension extends ControllerExtension {
     private static final int USERBUTTONCCMIN = 1;
     private static final int USERBUTTONCCMAX = 127;
     private static final int DEFUSERBUTTON2CC = 16;
+    private static final int LEDBUDGETMIN = 48;
+    private static final int LEDBUDGETMAX = 3072;
+    private static final int DEFLEDBUDGET = 768;
+    private static final int CARRYOVERDELAYMS = 5;
+    private static final int MAXNRPN = 300;
+    private static final int[] QUERIEDSETTINGS = {19, 229, 258}; // bend range, switch 2 assignment and CC
+    private static final int QUERYTIMEOUTMS = 500;
+    private static final int METRICSPERIODMS = 1000;
+    private static final int METRICSPRINTMAX = 60;
+    private static final String[] LATENCYPAGES = {"Note mode", "Clip launcher", "Life", "QWERTY", "Paint", "Flappy Bird", "Metrics"};
+    private static final String[] CLIPWINDOWS = {"Visible grid", "2 x 2 grids", "3 x 3 grids", "4 x 4 grids"};
+    private static final int CHORDWINDOWMIN = 0;
+    private static final int CHORDWINDOWMAX = 100;
+    private static final int DEFCHORDWINDOW = 20;
+    private static final int METERFPSMIN = 5;
+    private static final int METERFPSMAX = 60;
+    private static final String[] CLIPRELEASES = {"Nothing", "Stop the track", "Return to the previous clip"};
+    private static final String[] LAUNCHQUANTIZATIONS = {"none", "8", "4", "2", "1", "1/2", "1/4", "1/8", "1/16"};
+    private static final String[] OVERVIEWBLOCKSIZES = {"Off", "2 x 2", "4 x 4", "8 x 8"};
+    private static final String[] CLIPCOLORMAPPINGS = {"Hue", "Nearest (CIELAB)"};
+    private static final String[] LIFEUNIVERSESIZES = {"Surface", "256 x 256", "1024 x 1024", "4096 x 4096"};
     private static final Integer[] PASSTHROUGHTABLE;
     private static final Integer[] NOPASSTHROUGHTABLE;
 
@@ -40,6 +40,12 @@ public abstract class LinnstrumentPage {
      */
     public Boolean onMidi(ShortMidiMessage msg) { return false; }
 
+    /**
+     * called right before the page's LEDs are sent out. Pages that collect changes from observers
+     * apply them here, once per flush.
+     */
+    public void prepareFlush() {}
+
     public void buttonDown(int x, int y, int velocity) {}
     public void buttonUp(int x, int y) {}
 
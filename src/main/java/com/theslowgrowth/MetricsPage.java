@@ -0,0 +1,90 @@
+package com.theslowgrowth;
+
+/**
+ * Hidden page that shows the rates of the MetricsRegistry as bar graphs, one metric per row. The first column
+ * shows each row's colour, the bars grow to the right on a logarithmic scale: every cell doubles the rate.
+ * Bars turn yellow and red when a rate gets high enough to load the MIDI link or bitwig.
+ */
+public class MetricsPage extends LinnstrumentPage
+{
+    MetricsPage(int width, int height, LinnstrumentClipLauncherExtension parent, MetricsRegistry metrics)
+    {
+        super(width, height, parent);
+        metrics_ = metrics;
+        width_ = width;
+    }
+
+    @Override
+    protected void showImpl()
+    {
+        getParent().getHost().showPopupNotification("LinnStrument metrics");
+        for (int row = 0; row < ROWS.length; row++)
+            setLED(0, row, ROWCOLORS[row]);
+        update();
+    }
+
+    @Override
+    protected void hideImpl()
+    {
+    }
+
+    /**
+     * draws the bars with the rates of the latest sample
+     */
+    void update()
+    {
+        for (int row = 0; row < ROWS.length; row++)
+        {
+            double rate;
+            if (ROWS[row] == DIRTYPERFLUSH)
+                rate = metrics_.getDirtyCellsPerFlush();
+            else if (ROWS[row] == SCHEDULECALLS)
+                rate = metrics_.getScheduleRate();
+            else if (ROWS[row] == TASKS)
+                rate = metrics_.getTaskRate();
+            else
+                rate = metrics_.getRate(ROWS[row]);
+            drawBar(row, rate);
+        }
+    }
+
+    private void drawBar(int row, double rate)
+    {
+        // 1 cell for 1 per second, 2 for 2, 3 for 4, ...
+        int cells = (rate < 1) ? 0 : 1 + (int) (Math.log(rate) / Math.log(2));
+        for (int x = 1; x < width_; x++)
+        {
+            Color c = Color.OFF;
+            if (x <= cells)
+            {
+                if (x > REDCELLS)
+                    c = Color.RED;
+                else if (x > YELLOWCELLS)
+                    c = Color.YELLOW;
+                else
+                    c = Color.GREEN;
+            }
+            setLED(x, row, c);
+        }
+    }
+
+    // pseudo metrics that are computed from several counters
+    private static final int DIRTYPERFLUSH = -1;
+    private static final int SCHEDULECALLS = -2;
+    private static final int TASKS = -3;
+
+    private static final int[] ROWS = {
+            MetricsRegistry.FLUSHES,
+            DIRTYPERFLUSH,
+            MetricsRegistry.CCS_LINNSTRUMENT,
+            MetricsRegistry.MESSAGES_SECOND_OUT,
+            SCHEDULECALLS,
+            TASKS,
+            MetricsRegistry.CLIP_OBSERVERS };
+    private static final Color[] ROWCOLORS = { Color.WHITE, Color.CYAN, Color.MAGENTA, Color.PINK, Color.BLUE, Color.LIME, Color.ORANGE };
+    private static final int YELLOWCELLS = 9;  // above 256 per second
+    private static final int REDCELLS = 12;    // above 2048 per second
+
+    private final MetricsRegistry metrics_;
+    private final int width_;
+}
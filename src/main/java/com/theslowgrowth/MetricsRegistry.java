@@ -0,0 +1,172 @@
+package com.theslowgrowth;
+
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts what the extension does: flushes, LED and MIDI traffic, timer callbacks, clip observer callbacks,
+ * meter frames and Life generations. Every metric is a running total in a primitive array; counting is a
+ * single increment and never allocates. All counting happens on bitwig's controller thread, so no locking is
+ * needed. sample() turns the totals into rates per second since the previous sample. Totals kept elsewhere
+ * (e.g. LEDOutput's CC count) can be read at sample time instead of being counted twice.
+ * Values that are not totals, like the scheduler's jitter, are read as they are at sample time (trackValue()).
+ */
+class MetricsRegistry
+{
+    static final int FLUSHES = 0;
+    static final int DIRTY_CELLS = 1;          // dirty cells of the hardware buffer, summed over all flushes
+    static final int CCS_LINNSTRUMENT = 2;     // CCs sent to the LinnStrument (LEDs and NRPNs)
+    static final int MESSAGES_SECOND_OUT = 3;  // MIDI messages sent by QWERTY, Life and Flappy Bird
+    // host.scheduleTask() calls by source
+    static final int SCHEDULE_SCHEDULER = 4;
+    static final int SCHEDULE_CLIPS = 5;
+    static final int SCHEDULE_LIFE = 6;
+    static final int SCHEDULE_EXTENSION = 7;
+    // TransportScheduler tasks that ran, by source
+    static final int TASK_BLINK = 8;
+    static final int TASK_CLIPS = 9;
+    static final int TASK_LIFE = 10;
+    static final int TASK_FLAPPY = 11;
+    static final int TASK_OTHER = 12;
+    static final int CLIP_OBSERVERS = 13;      // clip slot observer callbacks of the clip launcher
+    static final int LEDS_COALESCED = 14;      // LED changes overwritten before they were sent
+    static final int LEDS_SUPPRESSED = 15;     // dirty cells not sent because the hardware had the colour
+    static final int LEDS_DEFERRED = 16;       // cells that had to wait for a later flush
+    static final int METER_FRAMES = 17;
+    static final int METER_CHANGES = 18;       // meter cells that changed colour
+    static final int LIFE_GENERATIONS = 19;
+    static final int LIFE_STEP_NANOS = 20;     // time spent calculating generations
+    static final int LIFE_STEP_CELLS = 21;     // cells visited calculating generations
+    static final int COUNT = 22;
+
+    // values read as they are
+    static final int JITTER_P50 = 0;           // timer callback lateness in ms
+    static final int JITTER_P99 = 1;
+    static final int RECORDINGS = 2;           // clips being recorded
+    static final int VALUECOUNT = 3;
+
+    MetricsRegistry()
+    {
+        lastSampleNanos_ = System.nanoTime();
+    }
+
+    void increment(int metric)
+    {
+        totals_[metric]++;
+    }
+
+    void add(int metric, long n)
+    {
+        totals_[metric] += n;
+    }
+
+    /**
+     * takes a metric's total from somewhere else at sample time, instead of counting it here
+     * @param total supplies the running total
+     */
+    void track(int metric, LongSupplier total)
+    {
+        tracked_[metric] = total;
+    }
+
+    /**
+     * reads a value at sample time, as it is
+     */
+    void trackValue(int value, DoubleSupplier supplier)
+    {
+        trackedValues_[value] = supplier;
+    }
+
+    /**
+     * updates the rates with what has been counted since the last sample
+     */
+    void sample()
+    {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastSampleNanos_) / 1e9);
+        lastSampleNanos_ = now;
+        for (int m = 0; m < COUNT; m++)
+        {
+            if (tracked_[m] != null)
+                totals_[m] = tracked_[m].getAsLong();
+            rates_[m] = (totals_[m] - sampled_[m]) / seconds;
+            sampled_[m] = totals_[m];
+        }
+        for (int v = 0; v < VALUECOUNT; v++)
+        {
+            if (trackedValues_[v] != null)
+                values_[v] = trackedValues_[v].getAsDouble();
+        }
+    }
+
+    /**
+     * @return events per second between the last two samples
+     */
+    double getRate(int metric)
+    {
+        return rates_[metric];
+    }
+
+    /**
+     * @return average number of dirty cells per flush between the last two samples
+     */
+    double getDirtyCellsPerFlush()
+    {
+        return (rates_[FLUSHES] > 0) ? rates_[DIRTY_CELLS] / rates_[FLUSHES] : 0;
+    }
+
+    /**
+     * @return a value as it was at the last sample
+     */
+    double getValue(int value)
+    {
+        return values_[value];
+    }
+
+    /**
+     * @return average time a Life generation took between the last two samples, in ms
+     */
+    double getLifeStepMillis()
+    {
+        return (rates_[LIFE_GENERATIONS] > 0) ? rates_[LIFE_STEP_NANOS] / 1e6 / rates_[LIFE_GENERATIONS] : 0;
+    }
+
+    double getScheduleRate()
+    {
+        return rates_[SCHEDULE_SCHEDULER] + rates_[SCHEDULE_CLIPS] + rates_[SCHEDULE_LIFE] + rates_[SCHEDULE_EXTENSION];
+    }
+
+    double getTaskRate()
+    {
+        return rates_[TASK_BLINK] + rates_[TASK_CLIPS] + rates_[TASK_LIFE] + rates_[TASK_FLAPPY] + rates_[TASK_OTHER];
+    }
+
+    /**
+     * @return the rates and values of the last sample as two lines for the controller script console
+     */
+    String summary()
+    {
+        return String.format("Metrics: %.0f flushes/s (%.1f dirty cells each), LinnStrument %.0f CC/s, second output %.0f msg/s, "
+                        + "scheduleTask %.0f/s (scheduler %.0f, clips %.0f, life %.0f, extension %.0f), "
+                        + "tasks %.0f/s (blink %.0f, clips %.0f, life %.0f, flappy %.0f, other %.0f), clip observers %.0f/s%n"
+                        + "  LEDs %.0f coalesced/s, %.0f suppressed/s, %.0f deferred/s, timer jitter p50 %.2f ms p99 %.2f ms, "
+                        + "meters %.1f frames/s (%.0f LED changes/s), life %.1f generations/s (%.3f ms each, %.1f Mcells/s), "
+                        + "%.0f recordings",
+                rates_[FLUSHES], getDirtyCellsPerFlush(), rates_[CCS_LINNSTRUMENT], rates_[MESSAGES_SECOND_OUT],
+                getScheduleRate(), rates_[SCHEDULE_SCHEDULER], rates_[SCHEDULE_CLIPS], rates_[SCHEDULE_LIFE], rates_[SCHEDULE_EXTENSION],
+                getTaskRate(), rates_[TASK_BLINK], rates_[TASK_CLIPS], rates_[TASK_LIFE], rates_[TASK_FLAPPY], rates_[TASK_OTHER],
+                rates_[CLIP_OBSERVERS],
+                rates_[LEDS_COALESCED], rates_[LEDS_SUPPRESSED], rates_[LEDS_DEFERRED], values_[JITTER_P50], values_[JITTER_P99],
+                rates_[METER_FRAMES], rates_[METER_CHANGES], rates_[LIFE_GENERATIONS], getLifeStepMillis(),
+                (rates_[LIFE_STEP_NANOS] > 0) ? rates_[LIFE_STEP_CELLS] * 1e3 / rates_[LIFE_STEP_NANOS] : 0,
+                values_[RECORDINGS]);
+    }
+
+    private final long[] totals_ = new long[COUNT];
+    private final long[] sampled_ = new long[COUNT];     // totals at the last sample
+    private final double[] rates_ = new double[COUNT];
+    private final LongSupplier[] tracked_ = new LongSupplier[COUNT];
+    private final double[] values_ = new double[VALUECOUNT];
+    private final DoubleSupplier[] trackedValues_ = new DoubleSupplier[VALUECOUNT];
+    private long lastSampleNanos_;
+}
@@ -0,0 +1,86 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.controller.api.Transport;
+
+/**
+ * Estimates the transport position at any moment. getPosition() of the transport only changes
+ * whenever the host sends an update, so reading it from a timer callback returns a value that is
+ * a little old. This clock runs on System.nanoTime() and the current tempo instead, and pulls its
+ * phase towards every new position sample the host delivers. Big deviations (start, loop,
+ * relocation) are taken over directly. While the transport is stopped the clock keeps running
+ * from where it stopped, as a virtual transport.
+ */
+class MusicalClock
+{
+    MusicalClock(Transport transport)
+    {
+        transport_ = transport;
+        anchorNanos_ = System.nanoTime();
+        anchorPosition_ = 0;
+        lastPosition_ = 0;
+        lastSample_ = Double.NaN;
+    }
+
+    /**
+     * @return the estimated position in beats right now. Doesn't go backwards unless the transport jumped.
+     */
+    public double now()
+    {
+        long t = System.nanoTime();
+        double position = anchorPosition_ + (t - anchorNanos_) * getTempo() / 60e9;
+        jumped_ = false;
+
+        boolean playing = transport_.isPlaying().get();
+        if (playing)
+        {
+            double sample = transport_.getPosition().get();
+            if (!wasPlaying_ || (sample != lastSample_))
+            {
+                lastSample_ = sample;
+                double error = sample - position;
+                if (!wasPlaying_ || (Math.abs(error) > JUMPBEATS))
+                {
+                    position = sample;
+                    jumped_ = true;
+                }
+                else
+                    position += error * PHASEGAIN;
+            }
+        }
+        wasPlaying_ = playing;
+
+        if (!jumped_ && (position < lastPosition_))
+            position = lastPosition_;
+        anchorPosition_ = position;
+        anchorNanos_ = t;
+        lastPosition_ = position;
+        return position;
+    }
+
+    /**
+     * @return true if the last call to now() re-locked to the transport instead of following it smoothly
+     */
+    public boolean hasJumped()
+    {
+        return jumped_;
+    }
+
+    /**
+     * @return the current tempo in beats per minute
+     */
+    public double getTempo()
+    {
+        return transport_.tempo().value().get() * 646 + 20; // bitwig tempo goes from 20bpm to 666 bpm
+    }
+
+    private final Transport transport_;
+    private long anchorNanos_;
+    private double anchorPosition_;
+    private double lastPosition_;
+    private double lastSample_;
+    private boolean wasPlaying_;
+    private boolean jumped_;
+
+    private static final double JUMPBEATS = 0.25; // larger errors are treated as a jump of the transport
+    private static final double PHASEGAIN = 0.25; // fraction of the phase error corrected per sample
+}
@@ -0,0 +1,163 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.controller.api.MidiOut;
+
+import java.util.Arrays;
+
+/**
+ * Sends NRPNs to the LinnStrument. The value the device has of every parameter is remembered (the last value
+ * sent, or what the device reported, see assume()), so writing a value it already has costs nothing.
+ * Writes are collected until flush(): a parameter written twice is only sent once, the parameter number is
+ * only selected if it changed, and the RPN null that ends an NRPN is sent once per batch instead of once
+ * per parameter.
+ */
+class NRPNOutput
+{
+    NRPNOutput(MidiOut out, int parameters)
+    {
+        out_ = out;
+        sent_ = new int[parameters];
+        pending_ = new int[parameters];
+        pendingOrder_ = new int[parameters];
+        Arrays.fill(pending_, -1);
+        invalidate();
+    }
+
+    /**
+     * writes a parameter with the next flush, unless it already has the value
+     */
+    void set(int parameter, int value)
+    {
+        if (pending_[parameter] >= 0)
+        {
+            pending_[parameter] = value; // only the last value of a batch goes out
+            savedCount_++;
+            return;
+        }
+        if (sent_[parameter] == value)
+        {
+            savedCount_++;
+            return;
+        }
+        pending_[parameter] = value;
+        pendingOrder_[pendingCount_++] = parameter;
+    }
+
+    /**
+     * sends a parameter right away, whatever was sent before. For parameters that are requests rather than
+     * settings, like NRPN 299 (request the value of an NRPN).
+     */
+    void sendNow(int parameter, int value)
+    {
+        flush();
+        write(parameter, value);
+        sendCC(101, 127); // RPN parameter number reset
+        sendCC(100, 127);
+        selected_ = -1;
+        sent_[parameter] = -1;
+    }
+
+    /**
+     * remembers a value the device reported, so that writing it is suppressed
+     */
+    void assume(int parameter, int value)
+    {
+        if (pending_[parameter] < 0)
+            sent_[parameter] = value;
+    }
+
+    /**
+     * @return the value the device has, as last sent to or reported by it, -1 if it isn't known
+     */
+    int getKnown(int parameter)
+    {
+        return sent_[parameter];
+    }
+
+    /**
+     * sends the parameters written since the last flush
+     */
+    void flush()
+    {
+        if (pendingCount_ == 0)
+            return;
+        for (int i = 0; i < pendingCount_; i++)
+        {
+            int parameter = pendingOrder_[i];
+            int value = pending_[parameter];
+            pending_[parameter] = -1;
+            if (sent_[parameter] == value)
+            {
+                savedCount_++; // written back to what the device had
+                continue;
+            }
+            write(parameter, value);
+            sent_[parameter] = value;
+        }
+        pendingCount_ = 0;
+        if (selected_ >= 0)
+        {
+            sendCC(101, 127); // RPN parameter number reset
+            sendCC(100, 127);
+            selected_ = -1;
+        }
+    }
+
+    /**
+     * forgets what the device has, e.g. after it has been reconnected, so every parameter is sent again
+     */
+    void invalidate()
+    {
+        Arrays.fill(sent_, -1);
+    }
+
+    /**
+     * @return number of NRPN messages sent
+     */
+    long getSentCount()
+    {
+        return sentCount_;
+    }
+
+    /**
+     * @return number of NRPN writes that were not sent, because the device had the value or it was overwritten in the same batch
+     */
+    long getSavedCount()
+    {
+        return savedCount_;
+    }
+
+    long getSentCCCount()
+    {
+        return sentCCCount_;
+    }
+
+    private void write(int parameter, int value)
+    {
+        if (parameter != selected_)
+        {
+            sendCC(99, parameter >> 7);    // NRPN number MSB
+            sendCC(98, parameter & 0x7F);  // NRPN number LSB
+            selected_ = parameter;
+        }
+        sendCC(6, value >> 7);    // NRPN value MSB
+        sendCC(38, value & 0x7F); // NRPN value LSB
+        sentCount_++;
+    }
+
+    private void sendCC(int CC, int value)
+    {
+        out_.sendMidi(0xB0, CC, value);
+        sentCCCount_++;
+    }
+
+    private final MidiOut out_;
+    private final int[] sent_;         // value the device has per parameter (sent or reported), -1 if not known
+    private final int[] pending_;      // value to send with the next flush, -1 if none
+    private final int[] pendingOrder_; // parameters in the order they were written
+    private int pendingCount_;
+    private int selected_ = -1;        // parameter number the device has selected, -1 after an RPN null
+    private long sentCount_;
+    private long savedCount_;
+    private long sentCCCount_;
+}
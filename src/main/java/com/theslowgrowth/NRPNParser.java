@@ -0,0 +1,97 @@
+package com.theslowgrowth;
+
+/**
+ * Assembles NRPN messages from the control changes they are made of (99/98 select the parameter,
+ * 6/38 carry the value) and hands completed parameters to listeners. The state is kept per MIDI channel
+ * in preallocated arrays, so parsing doesn't allocate.
+ *
+ * The parameter stays selected after a value has been received, further data entry messages set it again
+ * (NRPN running status). An RPN selection, in particular the RPN null (101/100 = 127) that ends most
+ * NRPN messages, deselects it. Data entry messages that don't belong to an NRPN are not consumed.
+ */
+class NRPNParser
+{
+    interface Listener
+    {
+        void nrpnReceived(int channel, int parameter, int value);
+    }
+
+    NRPNParser()
+    {
+        for (int c = 0; c < CHANNELS; c++)
+            reset(c);
+    }
+
+    /**
+     * adds a listener, which gets all completed parameters of all channels
+     */
+    void addListener(Listener listener)
+    {
+        Listener[] listeners = new Listener[listeners_.length + 1];
+        System.arraycopy(listeners_, 0, listeners, 0, listeners_.length);
+        listeners[listeners_.length] = listener;
+        listeners_ = listeners;
+    }
+
+    /**
+     * feeds a short MIDI message to the parser
+     * @return true, if the message was part of an NRPN and has been consumed
+     */
+    boolean process(int status, int data1, int data2)
+    {
+        if ((status & 0xF0) != 0xB0)
+            return false;
+        int c = status & 0x0F;
+        switch (data1)
+        {
+            case 99: // parameter MSB
+                parameterMSB_[c] = data2;
+                valueMSB_[c] = 0;
+                return true;
+            case 98: // parameter LSB
+                parameterLSB_[c] = data2;
+                valueMSB_[c] = 0;
+                return true;
+            case 101: // RPN parameter MSB
+            case 100: // RPN parameter LSB
+                // an RPN is selected from now on, the NRPN isn't
+                boolean wasNRPN = isSelected(c);
+                reset(c);
+                return wasNRPN || (data2 == 127);
+            case 6: // value MSB, the LSB completes it
+                if (!isSelected(c))
+                    return false;
+                valueMSB_[c] = data2;
+                return true;
+            case 38: // value LSB
+                if (!isSelected(c))
+                    return false;
+                int parameter = (parameterMSB_[c] << 7) | parameterLSB_[c];
+                int value = (valueMSB_[c] << 7) | data2;
+                for (Listener l : listeners_)
+                    l.nrpnReceived(c, parameter, value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isSelected(int channel)
+    {
+        return (parameterMSB_[channel] >= 0) && (parameterLSB_[channel] >= 0);
+    }
+
+    private void reset(int channel)
+    {
+        parameterMSB_[channel] = -1;
+        parameterLSB_[channel] = -1;
+        valueMSB_[channel] = 0;
+    }
+
+    private static final int CHANNELS = 16;
+
+    private final int[] parameterMSB_ = new int[CHANNELS]; // -1 if no NRPN is selected
+    private final int[] parameterLSB_ = new int[CHANNELS];
+    private final int[] valueMSB_ = new int[CHANNELS];
+    private Listener[] listeners_ = new Listener[0];
+}
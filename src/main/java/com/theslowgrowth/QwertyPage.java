@@ -101,7 +101,7 @@ public class QwertyPage extends LinnstrumentPage {
     public void buttonDown(int x, int y, int velocity) {
         KeyDef kd = KEYBOARD[y][x];
         if (kd.midiNote != 0) {
-            getParent().getQwertyOut().sendMidi(0x90, kd.midiNote, velocity);
+            getParent().sendToSecondOut(0x90, kd.midiNote, velocity);
             if (kd.baseColor == Color.RED || kd.baseColor == Color.MAGENTA) {
                 setLED(x, y, WHITE);
             } else {
@@ -114,7 +114,7 @@ public class QwertyPage extends LinnstrumentPage {
     public void buttonUp(int x, int y) {
         KeyDef kd = KEYBOARD[y][x];
         if (kd.midiNote != 0) {
-            getParent().getQwertyOut().sendMidi(0x80, kd.midiNote, 0);
+            getParent().sendToSecondOut(0x80, kd.midiNote, 0);
             setLED(x, y, kd.baseColor);
         }
     }
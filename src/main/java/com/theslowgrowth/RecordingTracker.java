@@ -0,0 +1,146 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.callback.ClipLauncherSlotBankPlaybackStateChangedCallback;
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.TrackBank;
+
+/**
+ * Keeps track of clips that are being recorded, so they can be finished later no matter where the clip
+ * launcher has scrolled to in the meantime. Every recording gets a 1x1 track bank pinned to its slot
+ * (absolute track and scene). Bitwig only allows banks to be created during init, so the banks are
+ * created up front and reused; a recording that stops by other means gives its bank back.
+ */
+class RecordingTracker
+{
+    RecordingTracker(ControllerHost host, int capacity)
+    {
+        host_ = host;
+        slots_ = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+            slots_[i] = new Slot(host.createMainTrackBank(1, 0, 1));
+    }
+
+    /**
+     * pins a bank to a slot that recording was started in. If all banks are taken, the oldest recording
+     * is forgotten (it keeps recording in bitwig).
+     */
+    void started(int track, int scene)
+    {
+        Slot slot = find(track, scene);
+        if (slot == null)
+            slot = find(-1, -1);
+        if (slot == null)
+        {
+            slot = slots_[0];
+            for (Slot s : slots_)
+            {
+                if (s.startedAt_ < slot.startedAt_)
+                    slot = s;
+            }
+            host_.println("Recording tracker: all " + slots_.length + " banks taken, forgetting the recording on track "
+                    + (slot.track_ + 1) + ", scene " + (slot.scene_ + 1));
+        }
+        slot.pin(track, scene, ++started_);
+    }
+
+    /**
+     * forgets a recording that was finished or cancelled from the clip launcher
+     */
+    void finished(int track, int scene)
+    {
+        Slot slot = find(track, scene);
+        if (slot != null)
+            slot.release();
+    }
+
+    /**
+     * finishes all recordings by launching their clips
+     * @return the number of recordings that were finished
+     */
+    int finishAll()
+    {
+        int count = 0;
+        for (Slot s : slots_)
+        {
+            if (s.track_ >= 0)
+            {
+                s.bank_.getItemAt(0).clipLauncherSlotBank().launch(0);
+                s.release();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getActiveCount()
+    {
+        int count = 0;
+        for (Slot s : slots_)
+        {
+            if (s.track_ >= 0)
+                count++;
+        }
+        return count;
+    }
+
+    private Slot find(int track, int scene)
+    {
+        for (Slot s : slots_)
+        {
+            if ((s.track_ == track) && (s.scene_ == scene))
+                return s;
+        }
+        return null;
+    }
+
+    private static class Slot implements ClipLauncherSlotBankPlaybackStateChangedCallback
+    {
+        Slot(TrackBank bank)
+        {
+            bank_ = bank;
+            bank_.scrollPosition().markInterested();
+            bank_.sceneBank().scrollPosition().markInterested();
+            bank_.getItemAt(0).clipLauncherSlotBank().addPlaybackStateObserver(this);
+            release();
+        }
+
+        void pin(int track, int scene, long startedAt)
+        {
+            track_ = track;
+            scene_ = scene;
+            startedAt_ = startedAt;
+            recording_ = false;
+            bank_.scrollPosition().set(track);
+            bank_.sceneBank().scrollPosition().set(scene);
+        }
+
+        void release()
+        {
+            track_ = -1;
+            scene_ = -1;
+            recording_ = false;
+        }
+
+        @Override
+        public void playbackStateChanged(int slotIndex, int playbackState, boolean isQueued)
+        {
+            if (isQueued || (track_ < 0))
+                return;
+            // once the clip has been recording, any other state means it was finished elsewhere
+            if (playbackState == ClipSlotStore.RECORDING)
+                recording_ = true;
+            else if (recording_)
+                release();
+        }
+
+        private final TrackBank bank_;
+        private int track_;       // absolute position of the recording clip, -1 if the bank is free
+        private int scene_;
+        private long startedAt_;
+        private boolean recording_; // bitwig has reported the clip as recording
+    }
+
+    private final ControllerHost host_;
+    private final Slot[] slots_;
+    private long started_;
+}
@@ -0,0 +1,429 @@
+package com.theslowgrowth;
+
+import java.util.Arrays;
+
+/**
+ * Sparse Game of Life universe for large boards, both sides a multiple of 64 (up to 4096).
+ * The board is split into 64x64 tiles that are only allocated once something lives in or next to them.
+ * A step only evaluates tiles with living cells, their neighbours and tiles with recently died cells,
+ * so the cost follows the active area instead of the board size. Rows are bit packed like in LifeEngine.
+ */
+class TiledLifeUniverse implements LifeUniverse
+{
+    private static final class Tile
+    {
+        Tile(int index, int tx, int ty)
+        {
+            tx_ = tx;
+            ty_ = ty;
+            hashBase_ = hashPosition(index, 0);
+            Arrays.fill(age_, (byte) DEAD);
+        }
+
+        final int tx_;
+        final int ty_;
+        final long hashBase_;
+        long[] rows_ = new long[TILE];
+        long[] next_ = new long[TILE]; // previous generation right after a step
+        final long[] changed_ = new long[TILE];
+        final long[] fading_ = new long[TILE];
+        final long[] tracked_ = new long[TILE]; // dead cells whose age is still counted
+        final long[] dying_ = new long[TILE];   // cells in one of the rule's dying states
+        final byte[] age_ = new byte[TILE * TILE];
+        boolean anyAlive_;
+        boolean anyTracked_;
+        long steppedAt_ = -1; // the masks and next_ are only valid if this is the current generation
+    }
+
+    TiledLifeUniverse(int width, int height)
+    {
+        width_ = width;
+        height_ = height;
+        tilesX_ = width / TILE;
+        tilesY_ = height / TILE;
+        tiles_ = new Tile[tilesX_ * tilesY_];
+        allocated_ = new int[tiles_.length];
+        stepList_ = new int[tiles_.length];
+        marks_ = new long[tiles_.length];
+        Arrays.fill(marks_, -1);
+        fadeHorizon_ = 0;
+        setRule(LifeRule.CONWAY);
+    }
+
+    @Override public int getWidth() { return width_; }
+    @Override public int getHeight() { return height_; }
+
+    @Override
+    public boolean isAlive(int x, int y)
+    {
+        Tile t = tiles_[tileIndex(x >> SHIFT, y >> SHIFT)];
+        return (t != null) && ((t.rows_[y & MASK] & (1L << x)) != 0);
+    }
+
+    @Override
+    public void setAlive(int x, int y, boolean alive)
+    {
+        int index = tileIndex(x >> SHIFT, y >> SHIFT);
+        Tile t = tiles_[index];
+        if (t == null)
+        {
+            if (!alive)
+                return;
+            t = allocate(index);
+        }
+        long position = hashPosition(index, y & MASK);
+        boolean dyingValid = t.steppedAt_ == generation_; // dying_ is stale otherwise, and not in the hash
+        hash_ ^= LifeUniverse.hashWord(t.rows_[y & MASK], position);
+        if (dyingValid)
+            hash_ ^= dyingHash(t, y & MASK, t.dying_[y & MASK]);
+        if (alive)
+        {
+            t.rows_[y & MASK] |= 1L << x;
+            t.anyAlive_ = true;
+        }
+        else
+            t.rows_[y & MASK] &= ~(1L << x);
+        t.tracked_[y & MASK] &= ~(1L << x);
+        t.dying_[y & MASK] &= ~(1L << x);
+        hash_ ^= LifeUniverse.hashWord(t.rows_[y & MASK], position);
+        if (dyingValid)
+            hash_ ^= dyingHash(t, y & MASK, t.dying_[y & MASK]);
+        t.age_[((y & MASK) << SHIFT) + (x & MASK)] = (byte) (alive ? 0 : DEAD);
+    }
+
+    @Override
+    public int getAge(int x, int y)
+    {
+        Tile t = tiles_[tileIndex(x >> SHIFT, y >> SHIFT)];
+        return (t == null) ? DEAD : t.age_[((y & MASK) << SHIFT) + (x & MASK)];
+    }
+
+    /**
+     * kills everything. Tiles stay allocated for reuse.
+     */
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < allocatedCount_; i++)
+        {
+            Tile t = tiles_[allocated_[i]];
+            Arrays.fill(t.rows_, 0);
+            Arrays.fill(t.age_, (byte) DEAD);
+            t.anyAlive_ = false;
+            t.anyTracked_ = false;
+            t.steppedAt_ = -1;
+        }
+        hash_ = 0;
+    }
+
+    @Override
+    public void setFadeHorizon(int ticks)
+    {
+        fadeHorizon_ = Math.min(ticks, DEAD - 1);
+        trackHorizon_ = Math.max(fadeHorizon_, decay_);
+    }
+
+    @Override
+    public void setRule(LifeRule rule)
+    {
+        rule_ = rule;
+        decay_ = rule.getDecayStates();
+        trackHorizon_ = Math.max(fadeHorizon_, decay_);
+    }
+
+    @Override
+    public void step()
+    {
+        long generation = generation_ + 1;
+
+        // collect the tiles that can change: living ones with their neighbours, and ones with aging cells
+        stepCount_ = 0;
+        int allocated = allocatedCount_; // tiles allocated while marking are empty and need no neighbours
+        for (int i = 0; i < allocated; i++)
+        {
+            Tile t = tiles_[allocated_[i]];
+            if (t.anyAlive_)
+            {
+                for (int dy = -1; dy <= 1; dy++)
+                    for (int dx = -1; dx <= 1; dx++)
+                        mark(tileIndex(t.tx_ + dx, t.ty_ + dy), generation);
+            }
+            else if (t.anyTracked_)
+                mark(tileIndex(t.tx_, t.ty_), generation);
+        }
+
+        // all tiles read the current generation of their neighbours, so nothing is swapped before every tile is done
+        for (int i = 0; i < stepCount_; i++)
+            computeNext(tiles_[stepList_[i]]);
+        for (int i = 0; i < stepCount_; i++)
+            finishStep(tiles_[stepList_[i]], generation);
+
+        generation_ = generation;
+        lastStepCells_ = (long) stepCount_ * TILE * TILE;
+    }
+
+    @Override
+    public long getChangedBits(int x, int y, int count)
+    {
+        return bits(x, y, count, true);
+    }
+
+    @Override
+    public long getFadingBits(int x, int y, int count)
+    {
+        return bits(x, y, count, false);
+    }
+
+    @Override
+    public long getHash()
+    {
+        return hash_;
+    }
+
+    @Override
+    public int getLastNeighborCount(int x, int y)
+    {
+        int count = 0;
+        for (int dy = -1; dy <= 1; dy++)
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                if ((dx != 0 || dy != 0) && wasAlive(Math.floorMod(x + dx, width_), Math.floorMod(y + dy, height_)))
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getLastStepCells()
+    {
+        return lastStepCells_;
+    }
+
+    /**
+     * @return number of tiles that currently hold memory
+     */
+    public int getAllocatedTiles()
+    {
+        return allocatedCount_;
+    }
+
+    private void mark(int index, long generation)
+    {
+        if (marks_[index] == generation)
+            return;
+        marks_[index] = generation;
+        if (tiles_[index] == null)
+            allocate(index);
+        stepList_[stepCount_++] = index;
+    }
+
+    private Tile allocate(int index)
+    {
+        Tile t = new Tile(index, index % tilesX_, index / tilesX_);
+        tiles_[index] = t;
+        allocated_[allocatedCount_++] = index;
+        return t;
+    }
+
+    private void computeNext(Tile t)
+    {
+        Tile n = tile(t.tx_, t.ty_ - 1);
+        Tile s = tile(t.tx_, t.ty_ + 1);
+        Tile w = tile(t.tx_ - 1, t.ty_);
+        Tile e = tile(t.tx_ + 1, t.ty_);
+
+        // rows -1..64 of this tile and the tiles left and right of it, as seen from this tile
+        haloW_[0] = row(tile(t.tx_ - 1, t.ty_ - 1), MASK);
+        haloM_[0] = row(n, MASK);
+        haloE_[0] = row(tile(t.tx_ + 1, t.ty_ - 1), MASK);
+        for (int r = 0; r < TILE; r++)
+        {
+            haloW_[r + 1] = row(w, r);
+            haloM_[r + 1] = t.rows_[r];
+            haloE_[r + 1] = row(e, r);
+        }
+        haloW_[TILE + 1] = row(tile(t.tx_ - 1, t.ty_ + 1), 0);
+        haloM_[TILE + 1] = row(s, 0);
+        haloE_[TILE + 1] = row(tile(t.tx_ + 1, t.ty_ + 1), 0);
+
+        // every column gets the value of its western / eastern neighbour, across the tile border
+        for (int r = 0; r < TILE + 2; r++)
+        {
+            long m = haloM_[r];
+            westOf_[r] = (m << 1) | (haloW_[r] >>> 63);
+            eastOf_[r] = (m >>> 1) | (haloE_[r] << 63);
+        }
+
+        boolean wasStepped = t.steppedAt_ == generation_;
+        long[] in = inputs_;
+        for (int r = 0; r < TILE; r++)
+        {
+            in[0] = westOf_[r];
+            in[1] = haloM_[r];
+            in[2] = eastOf_[r];
+            in[3] = westOf_[r + 1];
+            in[4] = eastOf_[r + 1];
+            in[5] = westOf_[r + 2];
+            in[6] = haloM_[r + 2];
+            in[7] = eastOf_[r + 2];
+            long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+            for (int i = 0; i < 8; i++)
+            {
+                long x = in[i];
+                long carry0 = c0 & x;
+                c0 ^= x;
+                long carry1 = c1 & carry0;
+                c1 ^= carry0;
+                long carry2 = c2 & carry1;
+                c2 ^= carry1;
+                c3 |= carry2;
+            }
+            t.next_[r] = rule_.nextRow(haloM_[r + 1], wasStepped ? t.dying_[r] : 0, c0, c1, c2, c3);
+        }
+    }
+
+    private void finishStep(Tile t, long generation)
+    {
+        boolean wasStepped = t.steppedAt_ == generation_;
+        boolean anyAlive = false;
+        boolean anyTracked = false;
+        for (int r = 0; r < TILE; r++)
+        {
+            long alive = t.next_[r];
+            long changed = alive ^ t.rows_[r];
+            t.changed_[r] = changed;
+            anyAlive |= alive != 0;
+            if (changed != 0)
+                hash_ ^= LifeUniverse.hashWord(t.rows_[r], t.hashBase_ + r) ^ LifeUniverse.hashWord(alive, t.hashBase_ + r);
+
+            // only born cells and cells that died recently need a new age
+            int base = r << SHIFT;
+            if (wasStepped)
+                hash_ ^= dyingHash(t, r, t.dying_[r]); // read before the ages move on
+            for (long born = changed & alive; born != 0; born &= born - 1)
+                t.age_[base + Long.numberOfTrailingZeros(born)] = 0;
+            long aging = ((wasStepped ? t.tracked_[r] : 0) | changed) & ~alive;
+            long tracked = 0, fading = 0, dying = 0;
+            for (; aging != 0; aging &= aging - 1)
+            {
+                int x = Long.numberOfTrailingZeros(aging);
+                long bit = 1L << x;
+                int age = t.age_[base + x] + 1;
+                if (age <= trackHorizon_)
+                {
+                    tracked |= bit;
+                    if (age <= fadeHorizon_)
+                        fading |= bit;
+                    if (age <= decay_)
+                        dying |= bit;
+                    t.age_[base + x] = (byte) age;
+                }
+                else
+                    t.age_[base + x] = (byte) DEAD;
+            }
+            t.tracked_[r] = tracked;
+            t.fading_[r] = fading;
+            t.dying_[r] = dying;
+            hash_ ^= dyingHash(t, r, dying);
+            anyTracked |= tracked != 0;
+        }
+        t.anyAlive_ = anyAlive;
+        t.anyTracked_ = anyTracked;
+        t.steppedAt_ = generation;
+
+        long[] tmp = t.rows_;
+        t.rows_ = t.next_;
+        t.next_ = tmp;
+    }
+
+    private long bits(int x, int y, int count, boolean changed)
+    {
+        int ty = y >> SHIFT;
+        int r = y & MASK;
+        int offset = x & MASK;
+        long value = word(tile(x >> SHIFT, ty), r, changed) >>> offset;
+        if ((offset != 0) && (offset + count > TILE))
+            value |= word(tile((x >> SHIFT) + 1, ty), r, changed) << (TILE - offset);
+        return (count >= 64) ? value : value & ((1L << count) - 1);
+    }
+
+    private long word(Tile t, int r, boolean changed)
+    {
+        if ((t == null) || (t.steppedAt_ != generation_))
+            return 0; // not evaluated in the last step, so nothing changed or faded there
+        return changed ? t.changed_[r] : t.fading_[r];
+    }
+
+    /** state of a cell before the last step */
+    private boolean wasAlive(int x, int y)
+    {
+        Tile t = tiles_[tileIndex(x >> SHIFT, y >> SHIFT)];
+        if (t == null)
+            return false;
+        long[] rows = (t.steppedAt_ == generation_) ? t.next_ : t.rows_;
+        return (rows[y & MASK] & (1L << x)) != 0;
+    }
+
+    private Tile tile(int tx, int ty)
+    {
+        return tiles_[tileIndex(tx, ty)];
+    }
+
+    /** tile coordinates wrap around, so neighbours of border tiles are found on the other side */
+    private int tileIndex(int tx, int ty)
+    {
+        return Math.floorMod(ty, tilesY_) * tilesX_ + Math.floorMod(tx, tilesX_);
+    }
+
+    private static long hashPosition(int tileIndex, int r)
+    {
+        return (long) tileIndex * TILE + r;
+    }
+
+    /**
+     * hash contribution of the dying cells of a tile row. Dying cells block births, and when they stop
+     * blocking depends on their stage, so both go into the hash, under keys apart from those of the living rows.
+     */
+    private long dyingHash(Tile t, int r, long dying)
+    {
+        long stages = 0;
+        for (long d = dying; d != 0; d &= d - 1)
+            stages = (stages ^ t.age_[(r << SHIFT) + Long.numberOfTrailingZeros(d)]) * 0x9E3779B97F4A7C15L;
+        return LifeUniverse.hashWord(dying ^ stages, (long) tiles_.length * TILE + t.hashBase_ + r);
+    }
+
+    private static long row(Tile t, int r)
+    {
+        return (t == null) ? 0 : t.rows_[r];
+    }
+
+    private final int width_;
+    private final int height_;
+    private final int tilesX_;
+    private final int tilesY_;
+    private final Tile[] tiles_; // null = never had a living cell in or next to it
+    private final int[] allocated_;
+    private int allocatedCount_;
+    private final int[] stepList_;
+    private int stepCount_;
+    private final long[] marks_; // generation a tile was last put on the step list
+    private long generation_;
+    private long lastStepCells_;
+    private int fadeHorizon_;
+    private int trackHorizon_;
+    private int decay_;
+    private LifeRule rule_;
+    private long hash_;
+    private final long[] haloW_ = new long[TILE + 2];
+    private final long[] haloM_ = new long[TILE + 2];
+    private final long[] haloE_ = new long[TILE + 2];
+    private final long[] westOf_ = new long[TILE + 2];
+    private final long[] eastOf_ = new long[TILE + 2];
+    private final long[] inputs_ = new long[8];
+
+    static final int TILE = 64;
+    private static final int SHIFT = 6;
+    private static final int MASK = TILE - 1;
+}
@@ -0,0 +1,265 @@
+package com.theslowgrowth;
+
+/**
+ * Hierarchical timing wheel over an abstract tick counter.
+ * Level 0 has one slot per tick, every further level has slots that span 64 times as many ticks.
+ * Entries are kept in intrusive lists, so adding, removing and re-adding an entry never allocates.
+ * When the wheel advances past the start of a higher level slot, that slot is cascaded down.
+ */
+class TimingWheel
+{
+    interface Listener
+    {
+        /**
+         * called for every entry that became due. The entry is no longer in the wheel and may be re-added.
+         */
+        void expired(Entry e, long now);
+    }
+
+    static class Entry
+    {
+        long due_;
+        private Entry prev_;
+        private Entry next_;
+        private int level_ = NONE;
+        private int slot_;
+
+        public boolean isScheduled()
+        {
+            return level_ != NONE;
+        }
+    }
+
+    TimingWheel(Listener listener)
+    {
+        listener_ = listener;
+        slots_ = new Entry[LEVELS][SLOTS];
+        occupied_ = new long[LEVELS];
+        now_ = 0;
+    }
+
+    /**
+     * @return the current tick. All entries due at or before it have expired.
+     */
+    public long now()
+    {
+        return now_;
+    }
+
+    public boolean isEmpty()
+    {
+        return size_ == 0;
+    }
+
+    /**
+     * adds an entry. Entries that are due now or earlier expire on the next tick.
+     */
+    public void add(Entry e)
+    {
+        if (e.level_ != NONE)
+            remove(e);
+        if (e.due_ <= now_)
+            e.due_ = now_ + 1;
+        insert(e);
+        size_++;
+    }
+
+    public void remove(Entry e)
+    {
+        if (e.level_ == NONE)
+            return;
+        if (e.level_ == EXPIRING)
+        {
+            if (e.prev_ != null)
+                e.prev_.next_ = e.next_;
+            else
+                expiring_ = e.next_;
+        }
+        else
+        {
+            if (e.prev_ != null)
+                e.prev_.next_ = e.next_;
+            else
+            {
+                slots_[e.level_][e.slot_] = e.next_;
+                if (e.next_ == null)
+                    occupied_[e.level_] &= ~(1L << e.slot_);
+            }
+        }
+        if (e.next_ != null)
+            e.next_.prev_ = e.prev_;
+        e.prev_ = null;
+        e.next_ = null;
+        e.level_ = NONE;
+        size_--;
+    }
+
+    /**
+     * advances tick by tick up to target and expires all entries that became due on the way
+     */
+    public void advanceTo(long target)
+    {
+        while (now_ < target)
+        {
+            if (size_ == 0)
+            {
+                now_ = target;
+                return;
+            }
+            now_++;
+            // cascade every level whose slot boundary we just crossed, higher levels first
+            for (int level = LEVELS - 1; level > 0; level--)
+            {
+                if ((now_ & ((1L << (level * SLOT_BITS)) - 1)) == 0)
+                    cascade(level, (int) (now_ >>> (level * SLOT_BITS)) & SLOT_MASK);
+            }
+            expireSlot((int) now_ & SLOT_MASK);
+        }
+    }
+
+    /**
+     * @return an upper bound for the tick at which the next entry expires: either its exact due tick,
+     *         or the tick at which the slot holding it gets cascaded. Long.MAX_VALUE if empty.
+     */
+    public long nextWakeup()
+    {
+        if (size_ == 0)
+            return Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++)
+        {
+            int shift = level * SLOT_BITS;
+            int current = (int) (now_ >>> shift) & SLOT_MASK;
+            long later = occupied_[level] & (-2L << current);
+            if (later != 0)
+            {
+                long rotation = (now_ >>> (shift + SLOT_BITS)) << (shift + SLOT_BITS);
+                return rotation + ((long) Long.numberOfTrailingZeros(later) << shift);
+            }
+        }
+        // only entries beyond the horizon: they are parked in the top level and will be looked at again
+        return ((now_ >>> (LEVELS * SLOT_BITS)) + 1) << (LEVELS * SLOT_BITS);
+    }
+
+    /**
+     * removes all entries and moves the wheel to a new tick
+     * @return the removed entries, chained through {@link #nextOf(Entry)}
+     */
+    public Entry clear(long newNow)
+    {
+        Entry chain = null;
+        for (int level = 0; level < LEVELS; level++)
+        {
+            for (int slot = 0; slot < SLOTS; slot++)
+            {
+                Entry e = slots_[level][slot];
+                while (e != null)
+                {
+                    Entry next = e.next_;
+                    e.prev_ = null;
+                    e.level_ = NONE;
+                    e.next_ = chain;
+                    chain = e;
+                    e = next;
+                }
+                slots_[level][slot] = null;
+            }
+            occupied_[level] = 0;
+        }
+        while (expiring_ != null)
+        {
+            Entry e = expiring_;
+            expiring_ = e.next_;
+            e.prev_ = null;
+            e.level_ = NONE;
+            e.next_ = chain;
+            chain = e;
+        }
+        size_ = 0;
+        now_ = newNow;
+        return chain;
+    }
+
+    /**
+     * walks a chain returned by {@link #clear(long)}. Must be called before the entry is added again.
+     */
+    public static Entry nextOf(Entry e)
+    {
+        Entry next = e.next_;
+        e.next_ = null;
+        return next;
+    }
+
+    private void insert(Entry e)
+    {
+        long diff = e.due_ ^ now_;
+        int level = (diff == 0) ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+        int slot;
+        if (level >= LEVELS)
+        {
+            // beyond the horizon: park it in the top level slot that is cascaded last
+            level = LEVELS - 1;
+            slot = (int) ((now_ >>> (level * SLOT_BITS)) - 1) & SLOT_MASK;
+        }
+        else
+            slot = (int) (e.due_ >>> (level * SLOT_BITS)) & SLOT_MASK;
+
+        e.level_ = level;
+        e.slot_ = slot;
+        e.prev_ = null;
+        e.next_ = slots_[level][slot];
+        if (e.next_ != null)
+            e.next_.prev_ = e;
+        slots_[level][slot] = e;
+        occupied_[level] |= 1L << slot;
+    }
+
+    private void cascade(int level, int slot)
+    {
+        Entry e = slots_[level][slot];
+        slots_[level][slot] = null;
+        occupied_[level] &= ~(1L << slot);
+        while (e != null)
+        {
+            Entry next = e.next_;
+            insert(e);
+            e = next;
+        }
+    }
+
+    private void expireSlot(int slot)
+    {
+        // detach the slot first, the listener may add entries (even into this slot) or remove others
+        expiring_ = slots_[0][slot];
+        slots_[0][slot] = null;
+        occupied_[0] &= ~(1L << slot);
+        for (Entry e = expiring_; e != null; e = e.next_)
+            e.level_ = EXPIRING;
+
+        while (expiring_ != null)
+        {
+            Entry e = expiring_;
+            expiring_ = e.next_;
+            if (expiring_ != null)
+                expiring_.prev_ = null;
+            e.next_ = null;
+            e.prev_ = null;
+            e.level_ = NONE;
+            size_--;
+            listener_.expired(e, now_);
+        }
+    }
+
+    private final Listener listener_;
+    private final Entry[][] slots_;
+    private final long[] occupied_; // one bit per non-empty slot and level
+    private Entry expiring_;
+    private long now_;
+    private int size_;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int NONE = -1;
+    private static final int EXPIRING = -2;
+}
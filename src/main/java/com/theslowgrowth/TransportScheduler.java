@@ -0,0 +1,270 @@
+package com.theslowgrowth;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.Transport;
+
+/**
+ * The one timer of the extension. Tasks either run on a musical grid (in beats, following the
+ * transport) or every fixed number of milliseconds. Both kinds live in timing wheels, and no matter
+ * how many tasks are registered there is only ever one pending host.scheduleTask() callback,
+ * which is aimed at the earliest due task. Positions come from a MusicalClock, and every delay is
+ * shortened by the lateness measured on previous callbacks.
+ */
+public class TransportScheduler implements TimingWheel.Listener
+{
+    /** resolution of the musical grid: 1/64 notes */
+    public static final int TICKS_PER_BEAT = 16;
+
+    public class Task extends TimingWheel.Entry
+    {
+        private Task(Runnable runnable, long period, boolean musical, int source)
+        {
+            runnable_ = runnable;
+            period_ = period;
+            musical_ = musical;
+            source_ = source;
+        }
+
+        public boolean isActive()
+        {
+            return isScheduled();
+        }
+
+        private final Runnable runnable_;
+        private final long period_; // ticks of the wheel the task lives in
+        private final boolean musical_;
+        private final int source_; // counted in the metrics when the task runs
+    }
+
+    TransportScheduler(ControllerHost host, Transport transport, MetricsRegistry metrics)
+    {
+        host_ = host;
+        metrics_ = metrics;
+        clock_ = new MusicalClock(transport);
+        beatWheel_ = new TimingWheel(this);
+        msWheel_ = new TimingWheel(this);
+        jitter_ = new Histogram();
+        originNanos_ = System.nanoTime();
+        position_ = 0;
+    }
+
+    /**
+     * creates a task that runs on every multiple of periodBeats on the transport's time line.
+     * Tasks are created once and then started and stopped as often as needed.
+     * @param periodBeats grid in beats (quarter notes), at least 1/64 note
+     */
+    public Task createBeatTask(Runnable runnable, double periodBeats)
+    {
+        return createBeatTask(runnable, periodBeats, MetricsRegistry.TASK_OTHER);
+    }
+
+    /**
+     * like {@link #createBeatTask(Runnable, double)}
+     * @param source metric the task's runs are counted in, one of MetricsRegistry.TASK_*
+     */
+    public Task createBeatTask(Runnable runnable, double periodBeats, int source)
+    {
+        long period = Math.max(1, Math.round(periodBeats * TICKS_PER_BEAT));
+        return new Task(runnable, period, true, source);
+    }
+
+    /**
+     * creates a task that runs every periodMillis milliseconds, regardless of the transport
+     */
+    public Task createMillisTask(Runnable runnable, long periodMillis)
+    {
+        return createMillisTask(runnable, periodMillis, MetricsRegistry.TASK_OTHER);
+    }
+
+    /**
+     * like {@link #createMillisTask(Runnable, long)}
+     * @param source metric the task's runs are counted in, one of MetricsRegistry.TASK_*
+     */
+    public Task createMillisTask(Runnable runnable, long periodMillis, int source)
+    {
+        return new Task(runnable, Math.max(1, periodMillis), false, source);
+    }
+
+    public void start(Task t)
+    {
+        if (t.isActive())
+            return;
+        if (t.musical_)
+        {
+            updatePosition();
+            if (beatWheel_.isEmpty())
+                beatWheel_.clear(currentBeatTick()); // the wheel stood still while nothing was registered
+            t.due_ = nextGridTick(beatWheel_.now(), t.period_);
+            beatWheel_.add(t);
+        }
+        else
+        {
+            long now = currentMillis();
+            msWheel_.advanceTo(now);
+            t.due_ = now + t.period_;
+            msWheel_.add(t);
+        }
+        scheduleCallback();
+    }
+
+    public void stop(Task t)
+    {
+        if (!t.isActive())
+            return;
+        if (t.musical_)
+            beatWheel_.remove(t);
+        else
+            msWheel_.remove(t);
+    }
+
+    /**
+     * @return the transport position in beats, as seen by the task that is currently running
+     */
+    public double getPosition()
+    {
+        return position_;
+    }
+
+    /**
+     * @return the current tempo in beats per minute
+     */
+    public double getTempo()
+    {
+        return clock_.getTempo();
+    }
+
+    /**
+     * @return median lateness of the timer callbacks in milliseconds
+     */
+    public double getJitterP50()
+    {
+        return jitter_.percentile(0.5) / 1000.0;
+    }
+
+    /**
+     * @return 99th percentile of the timer callbacks' lateness in milliseconds
+     */
+    public double getJitterP99()
+    {
+        return jitter_.percentile(0.99) / 1000.0;
+    }
+
+    @Override
+    public void expired(TimingWheel.Entry e, long now)
+    {
+        Task t = (Task) e;
+        // re-arm before running, so the task may stop itself. Missed grid points are skipped, not repeated.
+        if (t.musical_)
+        {
+            t.due_ = nextGridTick(now, t.period_);
+            beatWheel_.add(t);
+        }
+        else
+        {
+            t.due_ = Math.max(t.due_ + t.period_, now + 1);
+            msWheel_.add(t);
+        }
+        metrics_.increment(t.source_);
+        t.runnable_.run();
+    }
+
+    private void timerCallback(int generation)
+    {
+        if (generation != generation_)
+            return; // a newer callback has been scheduled in the meantime
+        callbackPending_ = false;
+
+        long lateness = System.nanoTime() - pendingDueNanos_;
+        jitter_.record(Math.max(0, lateness) / 1000);
+        // follow the measured lateness slowly, early callbacks pull the estimate back down
+        latenessNanos_ += (lateness - latenessNanos_) / 8;
+        latenessNanos_ = Math.max(0, latenessNanos_);
+
+        updatePosition();
+        long beatTick = currentBeatTick();
+        long behind = beatTick - beatWheel_.now();
+        if (clock_.hasJumped() || (behind < 0) || (behind > MAXCATCHUPTICKS))
+            rebaseBeatWheel(beatTick); // transport jumped (loop, relocation)
+        else
+            beatWheel_.advanceTo(beatTick);
+        msWheel_.advanceTo(currentMillis());
+
+        scheduleCallback();
+    }
+
+    private void scheduleCallback()
+    {
+        if (beatWheel_.isEmpty() && msWheel_.isEmpty())
+            return;
+
+        long delayNanos = Long.MAX_VALUE;
+        long beatWakeup = beatWheel_.nextWakeup();
+        if (beatWakeup != Long.MAX_VALUE)
+        {
+            double beats = (double) beatWakeup / TICKS_PER_BEAT - position_;
+            delayNanos = (long) (beats * 60e9 / getTempo());
+        }
+        long msWakeup = msWheel_.nextWakeup();
+        if (msWakeup != Long.MAX_VALUE)
+            delayNanos = Math.min(delayNanos, (msWakeup - currentMillis()) * 1000000L);
+
+        long dueNanos = System.nanoTime() + delayNanos;
+        if (callbackPending_ && (pendingDueNanos_ - dueNanos <= 0))
+            return; // the pending callback comes early enough
+
+        callbackPending_ = true;
+        pendingDueNanos_ = dueNanos;
+        final int generation = ++generation_;
+        long delay = Math.max(1, (delayNanos - latenessNanos_) / 1000000L);
+        metrics_.increment(MetricsRegistry.SCHEDULE_SCHEDULER);
+        host_.scheduleTask(() -> timerCallback(generation), delay);
+    }
+
+    private void updatePosition()
+    {
+        position_ = clock_.now();
+    }
+
+    private void rebaseBeatWheel(long beatTick)
+    {
+        TimingWheel.Entry e = beatWheel_.clear(beatTick);
+        while (e != null)
+        {
+            TimingWheel.Entry next = TimingWheel.nextOf(e);
+            Task t = (Task) e;
+            t.due_ = nextGridTick(beatTick, t.period_);
+            beatWheel_.add(t);
+            e = next;
+        }
+    }
+
+    private long currentBeatTick()
+    {
+        return (long) Math.floor(position_ * TICKS_PER_BEAT);
+    }
+
+    private long currentMillis()
+    {
+        return (System.nanoTime() - originNanos_) / 1000000L;
+    }
+
+    private static long nextGridTick(long now, long period)
+    {
+        return (Math.floorDiv(now, period) + 1) * period;
+    }
+
+    private final ControllerHost host_;
+    private final MusicalClock clock_;
+    private final TimingWheel beatWheel_; // ticks are 1/TICKS_PER_BEAT beats
+    private final TimingWheel msWheel_;   // ticks are milliseconds since originNanos_
+    private final long originNanos_;
+    private final MetricsRegistry metrics_;
+    private final Histogram jitter_; // lateness of the timer callbacks
+    private double position_;
+    private long latenessNanos_;
+    private boolean callbackPending_;
+    private long pendingDueNanos_;
+    private int generation_;
+
+    private static final long MAXCATCHUPTICKS = 4 * TICKS_PER_BEAT;
+}
@@ -0,0 +1,150 @@
+package com.theslowgrowth;
+
+import java.util.Random;
+
+/**
+ * Compares the packed ClipSlotStore with the layout the clip launcher used before it: a ClipState object per
+ * slot plus parallel boolean[][] and Color[][] arrays. Both are filled the way the observers fill them and
+ * scanned the way updateClipLED reads them, at the default observed window of 3 x 3 grids (66 x 21 slots
+ * on a full size LinnStrument).
+ * <pre>java -cp &lt;classes&gt; com.theslowgrowth.ClipSlotStoreBenchmark [tracks scenes]</pre>
+ */
+public class ClipSlotStoreBenchmark
+{
+    /** the slot state before ClipSlotStore, as it was kept per slot */
+    static class ClipState
+    {
+        enum State { STOPPED, PLAYING, RECORDING }
+
+        State currentState = State.STOPPED;
+        State queuedState = State.STOPPED;
+
+        boolean hasChangeQueued()
+        {
+            return currentState != queuedState;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int tracks = (args.length >= 2) ? Integer.parseInt(args[0]) : 66;
+        int scenes = (args.length >= 2) ? Integer.parseInt(args[1]) : 21;
+        int slots = tracks * scenes;
+
+        // what bitwig reports, the same for both layouts
+        Random random = new Random(1);
+        int[] states = new int[slots];
+        boolean[] queued = new boolean[slots];
+        boolean[] content = new boolean[slots];
+        int[] rgb = new int[slots];
+        for (int i = 0; i < slots; i++)
+        {
+            states[i] = random.nextInt(3);
+            queued[i] = random.nextInt(8) == 0;
+            content[i] = random.nextInt(3) != 0;
+            rgb[i] = random.nextInt(1 << 24);
+        }
+
+        ClipState[][] oldStates = new ClipState[tracks][scenes];
+        boolean[][] oldContent = new boolean[tracks][scenes];
+        Color[][] oldColors = new Color[tracks][scenes];
+        for (int t = 0; t < tracks; t++)
+        {
+            for (int s = 0; s < scenes; s++)
+                oldStates[t][s] = new ClipState();
+        }
+        ClipSlotStore store = new ClipSlotStore(tracks, scenes);
+
+        System.out.println(String.format("%d x %d slots, %d passes per run", tracks, scenes, PASSES));
+        for (int run = 0; run < RUNS; run++)
+        {
+            long t0 = System.nanoTime();
+            for (int p = 0; p < PASSES; p++)
+                fillOld(oldStates, oldContent, oldColors, scenes, states, queued, content, rgb);
+            long t1 = System.nanoTime();
+            for (int p = 0; p < PASSES; p++)
+                fillPacked(store, states, queued, content, rgb);
+            long t2 = System.nanoTime();
+            long sink = 0;
+            for (int p = 0; p < PASSES; p++)
+                sink += scanOld(oldStates, oldContent, oldColors);
+            long t3 = System.nanoTime();
+            for (int p = 0; p < PASSES; p++)
+                sink -= scanPacked(store);
+            long t4 = System.nanoTime();
+            // the scans must agree, which also keeps them from being optimized away
+            if (sink != 0)
+                throw new IllegalStateException("the layouts disagree");
+            if (run >= WARMUPRUNS)
+            {
+                System.out.println(String.format("run %d: fill old %.1f us, packed %.1f us; scan old %.1f us, packed %.1f us",
+                        run - WARMUPRUNS + 1, micros(t1 - t0), micros(t2 - t1), micros(t3 - t2), micros(t4 - t3)));
+            }
+        }
+    }
+
+    private static void fillOld(ClipState[][] states, boolean[][] content, Color[][] colors, int scenes,
+                                int[] reportedStates, boolean[] reportedQueued, boolean[] reportedContent, int[] rgb)
+    {
+        ClipState.State[] values = ClipState.State.values();
+        for (int i = 0; i < reportedStates.length; i++)
+        {
+            int t = i / scenes;
+            int s = i % scenes;
+            ClipState c = states[t][s];
+            c.currentState = values[reportedStates[i]];
+            c.queuedState = reportedQueued[i] ? values[(reportedStates[i] + 1) % 3] : c.currentState;
+            content[t][s] = reportedContent[i];
+            colors[t][s] = Color.fromRGB(((rgb[i] >> 16) & 0xFF) / 255.f, ((rgb[i] >> 8) & 0xFF) / 255.f, (rgb[i] & 0xFF) / 255.f);
+        }
+    }
+
+    private static void fillPacked(ClipSlotStore store, int[] reportedStates, boolean[] reportedQueued,
+                                   boolean[] reportedContent, int[] rgb)
+    {
+        for (int i = 0; i < reportedStates.length; i++)
+        {
+            store.setCurrentState(i, reportedStates[i]);
+            if (reportedQueued[i])
+                store.setQueuedState(i, (reportedStates[i] + 1) % 3);
+            store.setHasContent(i, reportedContent[i]);
+            store.setRGB(i, rgb[i]);
+        }
+    }
+
+    /** reads what updateClipLED needs per slot and sums it up */
+    private static long scanOld(ClipState[][] states, boolean[][] content, Color[][] colors)
+    {
+        long sum = 0;
+        for (int t = 0; t < states.length; t++)
+        {
+            for (int s = 0; s < states[t].length; s++)
+            {
+                ClipState c = states[t][s];
+                sum += content[t][s] ? colors[t][s].getValue() : 0;
+                sum += 16 * c.currentState.ordinal() + (c.hasChangeQueued() ? 64 : 0);
+            }
+        }
+        return sum;
+    }
+
+    private static long scanPacked(ClipSlotStore store)
+    {
+        long sum = 0;
+        for (int i = 0; i < store.size(); i++)
+        {
+            sum += store.hasContent(i) ? store.getColor(i).getValue() : 0;
+            sum += 16 * store.getCurrentState(i) + (store.hasChangeQueued(i) ? 64 : 0);
+        }
+        return sum;
+    }
+
+    private static double micros(long nanos)
+    {
+        return nanos / 1e3 / PASSES;
+    }
+
+    private static final int PASSES = 2000;
+    private static final int WARMUPRUNS = 3;
+    private static final int RUNS = WARMUPRUNS + 5;
+}
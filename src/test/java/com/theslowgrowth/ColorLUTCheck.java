@@ -0,0 +1,69 @@
+package com.theslowgrowth;
+
+/**
+ * Checks the quantized hue mapping (Color.HUE_LUT) against Color.fromHue(), which it was built from.
+ * Every bin centre must map exactly like fromHue(), for both the colour and its alternative; the check
+ * fails with exit code 1 otherwise. Over the 8-bit RGB cube, colours near a hue or saturation boundary
+ * can land in a bin whose centre maps differently; their number is reported, not failed on.
+ * <pre>java -cp &lt;classes&gt; com.theslowgrowth.ColorLUTCheck</pre>
+ */
+public class ColorLUTCheck
+{
+    public static void main(String[] args)
+    {
+        ColorMapping lut = Color.HUE_LUT;
+        Color.setMapping(lut);
+
+        int centreMismatches = 0;
+        for (int r = 0; r < ColorLUT.BINS; r++)
+        {
+            for (int g = 0; g < ColorLUT.BINS; g++)
+            {
+                for (int b = 0; b < ColorLUT.BINS; b++)
+                {
+                    float fr = ColorLUT.center(r);
+                    float fg = ColorLUT.center(g);
+                    float fb = ColorLUT.center(b);
+                    Color expected = Color.fromHue(fr, fg, fb);
+                    if ((lut.map(fr, fg, fb) != expected) || (lut.alternative(fr, fg, fb) != expected)
+                            || (Color.fromRGB(fr, fg, fb) != expected))
+                    {
+                        if (centreMismatches++ < MAXPRINTED)
+                            System.out.println(String.format("bin centre (%d, %d, %d): LUT %s, fromHue %s",
+                                    r, g, b, lut.map(fr, fg, fb), expected));
+                    }
+                }
+            }
+        }
+
+        int cubeMismatches = 0;
+        for (int r = 0; r < 256; r++)
+        {
+            for (int g = 0; g < 256; g++)
+            {
+                for (int b = 0; b < 256; b++)
+                {
+                    float fr = r / 255.f;
+                    float fg = g / 255.f;
+                    float fb = b / 255.f;
+                    if (lut.map(fr, fg, fb) != Color.fromHue(fr, fg, fb))
+                        cubeMismatches++;
+                }
+            }
+        }
+
+        int centres = ColorLUT.BINS * ColorLUT.BINS * ColorLUT.BINS;
+        System.out.println(String.format("%d of %d bin centres differ", centreMismatches, centres));
+        System.out.println(String.format("%d of %d 8-bit RGB colours differ (%.2f%%)", cubeMismatches, CUBE,
+                100.0 * cubeMismatches / CUBE));
+        if (centreMismatches > 0)
+        {
+            System.out.println("FAILED: the LUT doesn't match fromHue() at its bin centres");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static final int CUBE = 256 * 256 * 256;
+    private static final int MAXPRINTED = 20;
+}